@@ -0,0 +1,131 @@
+package nl.uva.science.esc.matchmaker;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingState;
+import nl.uva.science.esc.search.problems.StudentProjectMatchingProblem;
+
+/**
+ * Test that the matchings found by deferred acceptance are stable, for
+ * both proposing sides. We make random student-project problems, with ties
+ * in the preferences and with cutoffs, and look for blocking pairs: an
+ * acceptable student and project that both strictly prefer eachother over
+ * what they got. A project prefers any acceptable student over an empty
+ * place, and over a student that is not acceptable to it; the same holds
+ * for a student that is not in an acceptable project.
+ *
+ * There are no mandatory places, so completeAssignment only adds the
+ * students that are left over, and the result should always be stable.
+ * @author kaper
+ *
+ */
+public class TestDeferredAcceptance {
+
+	/**
+	 * Run the test
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int runs = 1000;
+		int studentcutoff = 6;   //as in the real data: some stated preferences don't count
+		int projectcutoff = 4;
+		Random random = new Random(1);
+		long[] blocking = new long[2];
+		for (int run=0; run<runs; run++) {
+			int numberOfAs = 5 + random.nextInt(60);
+			int numberOfBs = 2 + random.nextInt(15);
+			int[] BMin = new int[numberOfBs];
+			int[] BMax = new int[numberOfBs];
+			int places = 0;
+			for (int b=0; b<numberOfBs; b++) {
+				BMax[b] = 1 + random.nextInt(6);
+				places += BMax[b];
+			}//next b
+			while (places < numberOfAs) {
+				BMax[random.nextInt(numberOfBs)]++;
+				places++;
+			}//end while
+			//each student states a few projects, each of these states the student
+			int[][] prefsStud = new int[numberOfAs][numberOfBs];
+			int[][] prefsProj = new int[numberOfAs][numberOfBs];
+			for (int a=0; a<numberOfAs; a++) {
+				int stated = 1 + random.nextInt(Math.min(8, numberOfBs));
+				for (int k=0; k<stated; k++) {
+					int b = random.nextInt(numberOfBs);
+					prefsStud[a][b] = 1 + random.nextInt(8);   //ties are allowed
+					prefsProj[a][b] = 1 + random.nextInt(5);
+				}//next k
+			}//next a
+			StudentProjectMatchingProblem p = new StudentProjectMatchingProblem(
+					numberOfAs, 1, 0, BMin, BMax, prefsStud, prefsProj,
+					10000, 20000, false, "identity", studentcutoff, projectcutoff
+			);
+			for (int side=0; side<2; side++) {
+				ManyToOneMatchingState s = p.deferredAcceptance(side == 0);
+				blocking[side] += countBlockingPairs(
+						p, s.getPlaces(), prefsStud, prefsProj, studentcutoff, projectcutoff
+				);
+			}//next side
+		}//next run
+		System.out.println("runs: " + runs);
+		System.out.println("blocking pairs, students proposing: " + blocking[0]);
+		System.out.println("blocking pairs, projects proposing: " + blocking[1]);
+		System.out.println((blocking[0] + blocking[1] == 0) ? "all stable" : "NOT STABLE");
+	}//end main
+
+	/**
+	 * Count the blocking pairs of a matching
+	 * @param places, the matching as a places array of p
+	 * @return the number of student-project pairs that block it
+	 */
+	private static int countBlockingPairs(ManyToOneMatchingProblem p, int[] places,
+			int[][] prefsStud, int[][] prefsProj, int studentcutoff, int projectcutoff) {
+		int numberOfAs = prefsStud.length;
+		int numberOfBs = prefsStud[0].length;
+		int[] assignedB = new int[numberOfAs];
+		boolean[] free = new boolean[numberOfBs];    //an empty place, or one not acceptable
+		int[] worst = new int[numberOfBs];           //worst acceptable student held
+		Arrays.fill(worst, -1);
+		for (int j=0; j<places.length; j++) {
+			int b = p.getBOfPlace(j);
+			int a = places[j];
+			if (a == ManyToOneMatchingProblem.EMPTYPLACE ||
+					!acceptable(a, b, prefsStud, prefsProj, studentcutoff, projectcutoff)) {
+				free[b] = true;
+				if (a != ManyToOneMatchingProblem.EMPTYPLACE)
+					assignedB[a] = -1;
+				continue;
+			}
+			assignedB[a] = b;
+			if (worst[b] == -1 || prefsProj[a][b] > prefsProj[worst[b]][b])
+				worst[b] = a;
+		}//next j
+		int count = 0;
+		for (int a=0; a<numberOfAs; a++) {
+			for (int b=0; b<numberOfBs; b++) {
+				if (b == assignedB[a] ||
+						!acceptable(a, b, prefsStud, prefsProj, studentcutoff, projectcutoff))
+					continue;
+				boolean studentwants = assignedB[a] == -1 ||
+						prefsStud[a][b] < prefsStud[a][assignedB[a]];
+				boolean projectwants = free[b] || prefsProj[a][b] < prefsProj[worst[b]][b];
+				if (studentwants && projectwants)
+					count++;
+			}//next b
+		}//next a
+		return count;
+	}//end countBlockingPairs
+
+	/**
+	 * Is the pair acceptable to both? (as in StudentProjectMatchingProblem)
+	 */
+	private static boolean acceptable(int a, int b, int[][] prefsStud, int[][] prefsProj,
+			int studentcutoff, int projectcutoff) {
+		return prefsStud[a][b] != 0 && prefsProj[a][b] != 0 &&
+				prefsStud[a][b] < studentcutoff && prefsProj[a][b] < projectcutoff;
+	}//end acceptable
+
+}//end class
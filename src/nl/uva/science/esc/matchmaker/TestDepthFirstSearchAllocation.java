@@ -0,0 +1,57 @@
+package nl.uva.science.esc.matchmaker;
+
+import java.lang.management.ManagementFactory;
+
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.techniques.DepthFirstSearchTechnique;
+
+/**
+ * Test that the hot loop of the DepthFirstSearchTechnique does not allocate.
+ * We search the same problem twice: the first run warms up the JIT, during
+ * the second run we count the bytes allocated by this thread and divide 
+ * them by the number of leaves. After warmup it should be (close to) zero:
+ * what remains is the technique object and the clones of improved states.
+ * 
+ * Needs a JVM that offers com.sun.management.ThreadMXBean (HotSpot does).
+ * @author kaper
+ *
+ */
+public class TestDepthFirstSearchAllocation {
+
+	/**
+	 * Run the test
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		//10 A's, 10 B's with one place each: 10! leaves
+		int n = 10;
+		int[] BMin = new int[n];
+		int[] BMax = new int[n];
+		int[][] ABPreferences = new int[n][n];
+		for (int a=0; a<n; a++) {
+			BMax[a] = 1;
+			for (int b=0; b<n; b++) {
+				ABPreferences[a][b] = Math.abs(n - 1 - a - b) + 1;
+			}
+		}//next a
+		ManyToOneMatchingProblem p = new ManyToOneMatchingProblem(
+				BMin, BMax, ABPreferences, "identity", n
+		);
+		com.sun.management.ThreadMXBean mx = 
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadid = Thread.currentThread().getId();
+		for (int run=1; run<=2; run++) {
+			long before = mx.getThreadAllocatedBytes(threadid);
+			DepthFirstSearchTechnique t = new DepthFirstSearchTechnique(
+					p, p.getNumberOfPlaces()
+			);
+			t.setVerbose(false);
+			t.run();
+			long bytes = mx.getThreadAllocatedBytes(threadid) - before;
+			System.out.println("run " + run + ": leaves: " + t.getLeafCount() + 
+					", bestcost: " + t.getBestCost() + ", bytes allocated: " + bytes + 
+					", bytes per leaf: " + ((double) bytes / t.getLeafCount()));
+		}//next run
+	}//end main
+
+}//end class
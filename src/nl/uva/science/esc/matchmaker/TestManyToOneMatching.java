@@ -1,11 +1,14 @@
 package nl.uva.science.esc.matchmaker;
 
+import java.util.Random;
+
 import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
 import nl.uva.science.esc.search.techniques.*;
 
 /**
- * Tests for ManyToOneMatchingProblem
- * including three Techniques: DepthFirstSearch, Breadthfirstsearch and SimulatedAnnealing
+ * Tests for ManyToOneMatchingProblem with each of the Techniques that can 
+ * solve it, and some of their helpers: choose a problem px and a technique 
+ * tx at the bottom of main
  * @author kaper
  *
  */
@@ -174,6 +177,28 @@ public class TestManyToOneMatching {
 			//ask for the solution
 			System.out.println( px.showState() );			
 		}//end if
+		if (tx=="simulatedannealingregret") {
+			//start from a greedy solution instead of A's in order of id
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			SimulatedAnnealingTechnique t = new SimulatedAnnealingTechnique(
+					px, 1, 10, (float) 0.90, 1, 300
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="polish") {
+			//annealing, then the last improving swaps it left, and certify that
+			SimulatedAnnealingTechnique t = new SimulatedAnnealingTechnique(
+					px, 1, 10, (float) 0.90, 1, 300
+			);
+			t.run();
+			LocalOptimumPolisher lp = new LocalOptimumPolisher(
+					px, true, Runtime.getRuntime().availableProcessors()
+			);
+			lp.polish();
+			System.out.println( lp.showCertificate() );
+			System.out.println( px.showState() );
+		}//end if
 		if (tx=="depthfirstsearch") {
 			//there is not much to tweak in this one...
 			DepthFirstSearchTechnique t = new DepthFirstSearchTechnique(
@@ -182,6 +207,15 @@ public class TestManyToOneMatching {
 			t.run();
 			System.out.println( t.showBestState() );
 		}//end if
+		if (tx=="depthfirstsearchbestfirst") {
+			//same, but try good A's first
+			px.setBestFirstOrdering(true);
+			DepthFirstSearchTechnique t = new DepthFirstSearchTechnique(
+					px, px.getNumberOfPlaces()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
 		if (tx=="breadthfirstsearch") {
 			//again a simple one without interesting parameters
 			BreadthFirstSearchTechnique t = new BreadthFirstSearchTechnique(
@@ -190,6 +224,174 @@ public class TestManyToOneMatching {
 			t.run();
 			System.out.println( t.showBestState() );
 		}//end if
+		if (tx=="paralleldepthfirstsearch") {
+			//split the top 3 levels into tasks, for all available cores
+			ParallelDepthFirstSearchTechnique t = new ParallelDepthFirstSearchTechnique(
+					px, px.getNumberOfPlaces(), 3, 
+					Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="parallelbreadthfirstsearch") {
+			//one level at a time, for all available cores
+			ParallelBreadthFirstSearchTechnique t = new ParallelBreadthFirstSearchTechnique(
+					px, px.getNumberOfPlaces(), 
+					Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="beamsearch") {
+			//tweak the width: wider is better but slower
+			BeamSearchTechnique t = new BeamSearchTechnique(
+					px, px.getNumberOfPlaces(), 1000, true
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="limiteddiscrepancysearch") {
+			//it relies on a good first choice, so try good A's first
+			px.setBestFirstOrdering(true);
+			LimitedDiscrepancySearchTechnique t = new LimitedDiscrepancySearchTechnique(
+					px, px.getNumberOfPlaces()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="grasp") {
+			//tweak the number of iterations, the candidate list length and the elite pool size
+			GraspTechnique t = new GraspTechnique(
+					px, 100, 3, Runtime.getRuntime().availableProcessors(), 10
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="tabusearch") {
+			//tweak parameters in the call below
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			TabuSearchTechnique t = new TabuSearchTechnique(
+					px, 1000, 20, 5, 300
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="lateacceptance") {
+			//the history length is the one to tweak
+			LateAcceptanceTechnique t = new LateAcceptanceTechnique(
+					px, 50, 1000, 0
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="lateacceptancestops") {
+			//without a time budget the run must end by itself; on this instance
+			//the history once kept the search going up and down forever
+			ManyToOneMatchingProblem py = new ManyToOneMatchingProblem(
+					new int[] {0, 1, 0},
+					new int[] {1, 1, 1},
+					new int[][] {
+							{3, 5, 6},
+							{5, 4, 5}
+					},
+					"identity",
+					2
+			);
+			for (int k=0; k<100; k++) {
+				LateAcceptanceTechnique t = new LateAcceptanceTechnique(py, 10, 500, 0);
+				t.run();
+				System.out.println( "run "+k+" ended after "+t.getIteration()
+						+" iterations, bestenergy: "+t.getBestenergy() );
+			}//next k
+		}//end if
+		if (tx=="thresholdaccepting") {
+			//same schedule as the annealing, with a threshold for a temperature
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			ThresholdAcceptingTechnique t = new ThresholdAcceptingTechnique(
+					px, 2, 10, (float) 0.90, 0.5, 300
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="greatdeluge") {
+			//tweak the margin and the speed of the fall
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			GreatDelugeTechnique t = new GreatDelugeTechnique(
+					px, 3, 0.01, 300
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="genetic") {
+			//tweak the population size and the number of generations
+			GeneticTechnique t = new GeneticTechnique(
+					px, 50, 100, (float) 0.3, Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
+		if (tx=="localbeamsearch") {
+			//tweak the width of the beam and the successors per state
+			LocalBeamSearchTechnique t = new LocalBeamSearchTechnique(
+					px, 10, 20, 1000, 100, Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="largeneighbourhoodsearch") {
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			//tweak the number of A's per sub-problem and the way to choose them
+			LargeNeighbourhoodSearchTechnique t = new LargeNeighbourhoodSearchTechnique(
+					px, 10000, 30, LargeNeighbourhoodSearchTechnique.SELECTADAPTIVE, 500,
+					Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="variableneighbourhoodsearch") {
+			px.setInitGoalStateMethod(ManyToOneMatchingProblem.INITREGRET);
+			//tweak the number of iterations without improvement to stop after
+			VariableNeighbourhoodSearchTechnique t = new VariableNeighbourhoodSearchTechnique(
+					px, 10000, 200
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="antcolony") {
+			//tweak the number of ants, the evaporation and the weight of the preferences
+			AntColonyTechnique t = new AntColonyTechnique(
+					px, 20, 500, (float) 0.1, 2, true, 100,
+					Runtime.getRuntime().availableProcessors()
+			);
+			t.run();
+			System.out.println( px.showState() );
+		}//end if
+		if (tx=="adaptiveselection") {
+			//no problem needed: three simulated operators, of which "y" pays
+			//nothing for 1000 uses and then ten times as much as "x"; it
+			//should be taken up after the change
+			AdaptiveOperatorSelector sel = new AdaptiveOperatorSelector(
+					new String[] {"x", "y", "z"}, 50, 0.5
+			);
+			Random random = new Random(1);
+			int[] chosen = new int[3];   //times chosen after the change
+			for (int step=0; step<20000; step++) {
+				int k = sel.select(random);
+				long improvement = (k == 0) ? 10 : (k == 2) ? 5 : (step < 1000) ? 0 : 100;
+				sel.reward(k, improvement, 1000000);
+				if (step >= 1000)
+					chosen[k]++;
+			}//next step
+			System.out.println( "after the change, x: "+chosen[0]+", y: "+chosen[1]+", z: "+chosen[2] );
+		}//end if
+		if (tx=="astarsearch") {
+			//the heuristic comes from the problem, nothing to tweak here
+			AStarTechnique t = new AStarTechnique(
+					px, px.getNumberOfPlaces()
+			);
+			t.run();
+			System.out.println( t.showBestState() );
+		}//end if
 	}//end main
 
 }//end class
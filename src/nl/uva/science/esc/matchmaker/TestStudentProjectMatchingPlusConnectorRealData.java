@@ -36,6 +36,12 @@ public class TestStudentProjectMatchingPlusConnectorRealData {
 	public static final float temperaturedrop = (float) 0.997;
 	public static final double closetozerotemp = 0.1;
 	public static final int maxtriesinvain = 100000;
+	//re-solve after small changes: start from the solution of an earlier run
+	public static final boolean warmStart = false;
+	public static final double warmStartTemperature = 0.5;
+	public static final int warmStartWaittime = 20000;
+	//start from the stable matching found by deferred acceptance, students proposing
+	public static final boolean stableStart = false;
 	
 	//reporting parameters
 	public static final int nhighestprefstoreport = 10; //highest N preferences to report on
@@ -56,11 +62,29 @@ public class TestStudentProjectMatchingPlusConnectorRealData {
 				studentPrefCutoff, projectPrefCutoff, NOT_PLACED_PREF
 			}
 		);
+		double temperature = initialTemperature;
+		int wait = waittime;
+		if (warmStart) {
+			//the earlier solution, repaired, is the start for annealing
+			p.setPriorAssignment(pc.getPriorAssignmentFromFile(solutionPath));
+			p.setInitGoalStateMethod(StudentProjectMatchingProblem.INITPRIOR);
+			temperature = warmStartTemperature;
+			wait = warmStartWaittime;
+		}
+		else if (stableStart) {
+			//a stable matching as a baseline, it is also the start for annealing
+			ManyToOneMatchingState stable = p.deferredAcceptance(true);
+			System.out.println("Stable matching, students proposing");
+			showStateSummary(p, stable);
+			p.setInitGoalStateMethod(StudentProjectMatchingProblem.INITDASTUDENTS);
+		}
 		//tweak technique parameters in the call below
 		SimulatedAnnealingTechnique t = new SimulatedAnnealingTechnique(
-			p, initialTemperature, waittime, temperaturedrop, closetozerotemp, 
+			p, temperature, wait, temperaturedrop, closetozerotemp, 
 			maxtriesinvain
 		);
+		if (warmStart)
+			System.out.println("Places in the move focus: "+p.getMoveFocusSize());
 		t.run();
 		//show the final state on the console
 		System.out.println( p.showState() ); //from parent ManyToOneMatching... (current, volgnrs ipv id's)
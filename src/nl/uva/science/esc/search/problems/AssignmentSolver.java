@@ -0,0 +1,84 @@
+package nl.uva.science.esc.search.problems;
+
+import java.util.Arrays;
+
+/**
+ * Exact solver for the (linear) assignment problem: given an n x n matrix
+ * of costs, find a row for each column (and so a column for each row) with
+ * the lowest total cost. It is the Hungarian method in the shortest
+ * augmenting path form with potentials (Kuhn, Munkres; Jonker and
+ * Volgenant), which takes O(n^3) time. For the sub-problems of a few dozen
+ * places that large neighbourhood search hands it, that is well below a
+ * millisecond.
+ *
+ * It has no state, so it may be used from several threads at once.
+ * @author kaper
+ *
+ */
+public class AssignmentSolver {
+
+	private static final long INFINITE = Long.MAX_VALUE / 4;
+
+	/**
+	 * Solve an assignment problem
+	 * @param cost, n x n matrix, cost[row][column]; the costs should be well
+	 *    below Long.MAX_VALUE / 4 to leave room for the potentials
+	 * @return for each row: its column
+	 */
+	public static int[] solve(long[][] cost) {
+		int n = cost.length;
+		//1-based, index 0 is the "unassigned" row / column
+		long[] u = new long[n + 1];  //row potentials
+		long[] v = new long[n + 1];  //column potentials
+		int[] rowOf = new int[n + 1]; //for each column: its row, 0 if none
+		int[] way = new int[n + 1];   //previous column on the augmenting path
+		long[] minv = new long[n + 1];
+		boolean[] used = new boolean[n + 1];
+		for (int i=1; i<=n; i++) {
+			//find a shortest augmenting path from row i to a free column
+			rowOf[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, INFINITE);
+			Arrays.fill(used, false);
+			do {
+				used[j0] = true;
+				int i0 = rowOf[j0];
+				long delta = INFINITE;
+				int j1 = 0;
+				for (int j=1; j<=n; j++) {
+					if (!used[j]) {
+						long cur = cost[i0-1][j-1] - u[i0] - v[j];
+						if (cur < minv[j]) {
+							minv[j] = cur;
+							way[j] = j0;
+						}
+						if (minv[j] < delta) {
+							delta = minv[j];
+							j1 = j;
+						}
+					}//end if
+				}//next j
+				for (int j=0; j<=n; j++) {
+					if (used[j]) {
+						u[rowOf[j]] += delta;
+						v[j] -= delta;
+					}
+					else minv[j] -= delta;
+				}//next j
+				j0 = j1;
+			} while (rowOf[j0] != 0);
+			//flip the path
+			do {
+				int j1 = way[j0];
+				rowOf[j0] = rowOf[j1];
+				j0 = j1;
+			} while (j0 != 0);
+		}//next i
+		int[] columnOf = new int[n];
+		for (int j=1; j<=n; j++) {
+			columnOf[rowOf[j] - 1] = j - 1;
+		}//next j
+		return columnOf;
+	}//end solve
+
+}//end class
@@ -47,6 +47,66 @@ public interface DeterministicSearchProblem extends Problem {
 	 */
 	public void retreatMove(Move m);
 	
+	/**
+	 * Allocation-free variant of doForwardMove: execute the planned move, and
+	 * record it in two primitive arrays kept by the technique, instead of
+	 * returning a new Move object. A move is recorded as a value (what is
+	 * added) and a position (where it is added).
+	 * @param movevalues, array to record the value of the move in
+	 * @param movepositions, array to record the position of the move in
+	 * @param level, index in both arrays to use: the level the move starts at
+	 */
+	public void doForwardMove(int[] movevalues, int[] movepositions, int level);
+	
+	/**
+	 * Allocation-free variant of retreatMove, for a move recorded by the above
+	 * @param movevalue, value of the move to reverse
+	 * @param moveposition, position of the move to reverse
+	 */
+	public void retreatMove(int movevalue, int moveposition);
+	
+	/**
+	 * Execute an earlier stored Move forward again, without generating it
+	 * This is used to rebuild a node from the path of Moves that leads to it
+	 * (e.g. in A-star, where nodes are kept as parent-pointer + Move records).
+	 * Like doForwardMove, it leads to a node without search history.
+	 * @param m move to redo
+	 */
+	public void replayMove(Move m);
+	
+	/**
+	 * Return a hash of the current node, to recognise nodes that were reached
+	 * before. Nodes with the same hash are assumed to have the same remaining 
+	 * subtree, so the cheapest of them dominates the others.
+	 * @param level, number of Moves that lead to the current node
+	 * @return hash
+	 */
+	public long getStateHash(int level);
+	
+	/**
+	 * Number of long words needed to store any state of this problem in the
+	 * packed form of packState. Techniques that keep many nodes (e.g. a 
+	 * breadth-first fringe) use it to store nodes compactly.
+	 * @return number of longs
+	 */
+	public int getPackedStateSize();
+	
+	/**
+	 * Store the current state in packed form
+	 * @param buf, array to store the state in
+	 * @param offset, index of the first long to use
+	 */
+	public void packState(long[] buf, int offset);
+	
+	/**
+	 * Replace the current state by a state that was packed earlier.
+	 * Like setState, this leads to a node without search history.
+	 * @param buf, array containing the packed state
+	 * @param offset, index of its first long
+	 * @param level, number of Moves that lead to the packed state
+	 */
+	public void unpackState(long[] buf, int offset, int level);
+	
 	/**
 	 * Is the current state acceptable as a (not necessarily optimal) solution?
 	 * @param level, number of Moves that make up the solution (length of MoveStack)
@@ -0,0 +1,22 @@
+package nl.uva.science.esc.search.problems;
+
+/**
+ * A HeuristicSearchProblem is a DeterministicSearchProblem that can also
+ * estimate the cost of the moves that are still needed to get from the 
+ * current node to a goal state. This makes it fit for informed techniques
+ * like A-star.
+ * @author kaper
+ *
+ */
+public interface HeuristicSearchProblem extends DeterministicSearchProblem {
+	
+	/**
+	 * Estimate the remaining cost from the current node to the cheapest goal
+	 * state below it. For A-star to find the optimum, the estimate must be 
+	 * admissible: it should never be higher than the real remaining cost.
+	 * @param level, number of Moves that lead to the current node
+	 * @return estimated remaining cost
+	 */
+	public long getHeuristicCost(int level);
+	
+}//end interface
@@ -0,0 +1,59 @@
+package nl.uva.science.esc.search.problems;
+
+import java.util.Random;
+
+/**
+ * Problem stated to make it fit for local search techniques that look at
+ * many neighbours of a state, not at a single random one: GRASP, tabu
+ * search, and the like.
+ *
+ * Like in a stochastic optimisation problem, each state is a goal state.
+ * The state is a filling of places: each place belongs to a B and holds
+ * an A or nothing. A neighbour is reached by swapping the contents of two
+ * places; if one of them is empty, that is an A moving to another B.
+ * A swap is planned first, then its change in cost can be asked for by
+ * getDeltaCostRandomMove, and it can be accepted by acceptMove, just like
+ * a random move.
+ * @author kaper
+ *
+ */
+public interface LocalSearchProblem extends StochasticOptimisationProblem {
+
+	public int getNumberOfPlaces();
+
+	public int getNumberOfAs();
+
+	public int getNumberOfBs();
+
+	/**
+	 * @param place, a place number
+	 * @return the A in the place, or -1 if it is empty
+	 */
+	public int getAInPlace(int place);
+
+	/**
+	 * @param place, a place number
+	 * @return the B the place belongs to
+	 */
+	public int getBOfPlace(int place);
+
+	/**
+	 * Plan a swap of the contents of two places, if it leads to a goal state
+	 * @param place1, first place
+	 * @param place2, second place
+	 * @return is the swap allowed? If not, no move is planned
+	 */
+	public boolean planSwap(int place1, int place2);
+
+	/**
+	 * Initialise the problem to a goal state by randomized greedy
+	 * construction: the A's are assigned one by one, each time choosing at
+	 * random among the cheapest assignments that are still possible
+	 * @param random, the source of randomness, one per thread
+	 * @param rclsize, number of cheapest assignments to choose from
+	 *    (the restricted candidate list); 1 gives plain greedy
+	 * @throws Exception, if no goal state exists
+	 */
+	public void initRandomizedGreedyState(Random random, int rclsize) throws Exception;
+
+}//end interface
@@ -1,6 +1,10 @@
 package nl.uva.science.esc.search.problems;
 
 import java.lang.Math;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -32,7 +36,7 @@ import nl.uva.science.esc.search.views.Parameter;
  * @author kaper
  */
 public class ManyToOneMatchingProblem 
-		implements DeterministicSearchProblem, StochasticOptimisationProblem 
+		implements HeuristicSearchProblem, LocalSearchProblem, Cloneable
 		{
 	
 	//Each B has a number of places to offer for A's.
@@ -43,6 +47,7 @@ public class ManyToOneMatchingProblem
 	//redundant state info, used by the deterministic techniques for efficiency
 	private boolean isAmatched[]; //For each A-id (index): is it matched?
 	private int numAToMatch; //How many As do we still have to match?
+	private long matchedhash; //Zobrist hash of the set of matched A's
 	
 	//Move: plan for the next change
 	//Plan for a stochastic move: swap the contents of two places
@@ -54,15 +59,36 @@ public class ManyToOneMatchingProblem
 	
 	//Fixed problem data
 	protected int BPlaces[]; //For each place: to which B does it belong.
+	protected int BFirstPlace[]; //For each B (and one more): its first place, places of a B are consecutive
 	protected boolean PlaceMandatory[]; //For each place: is it mandatory to fill it? Each project may have some mandatory places
 	protected int ABPreferences[][]; //For each A,B pair the original preference is given: for reporting.
 	protected long ABPreferencesT[][]; //For each A,B pair the transformed preference is given: for use in optimizing
 	protected int numberOfAs;  //How many As are there
 	
+	//Derived problem data, calculated on first use
+	private long minPrefFromB[][]; //For each B, A: lowest preference of A for this or a later B
+	private long zobristA[];     //For each A-id: random key, for hashing the matched A's
+	private long zobristLevel[]; //For each level: random key
+	private long zobristPrev[];  //For each A-id (numberOfAs: EMPTYPLACE): key for the previous place
+	private int AOrderForB[][];  //For each B: the A-ids by increasing preference for it
+	private int ARankForB[][];   //For each B, A-id: position of the A in AOrderForB
+	private int BOrderForA[][];  //For each A-id: the B's by increasing preference
+	
+	//Settings for the deterministic techniques
+	private boolean bestfirstordering; //try the A's in order of preference, not of id
+	//Settings for the stochastic techniques
+	private String initgoalstatemethod = INITINORDER; //how initGoalState fills the places
+	private int[] priorassignment; //for each A: its B in an earlier solution, or -1
+	private int[] focusplaces;     //places a random move must involve, null: all
+	
 	//constants
 	public static final int EMPTYPLACE = 9999; //should not be an A-id
 	private static final int NOPLANYET = 9998; //should not be an A-id and
 	  //not a place number either, should be different from EMPTYPLACE
+	public static final String INITINORDER = "inorder"; //initGoalState methods
+	public static final String INITREGRET = "regret";
+	public static final String INITPRIOR = "prior";
+	private static final long NOEDGE = Long.MAX_VALUE; //no move between two B's
 
 	/**
 	 * Specific constructor
@@ -122,14 +148,17 @@ public class ManyToOneMatchingProblem
 		this.places = new int[i]; //we know the number of places...!
 		this.BPlaces = new int[i];
 		this.PlaceMandatory = new boolean[i];
+		this.BFirstPlace = new int[BMax.length + 1];
 		i = 0;
 		for(int j=0; j<BMax.length; j++) {
+			this.BFirstPlace[j] = i;
 			for(int k=0; k<BMax[j]; k++) {
 				this.BPlaces[i] = j; //register B-j as owner of place i
 				this.PlaceMandatory[i] = (k < BMin[j]) ? true : false;
 				i++;
 			}//end for
 		}//end for
+		this.BFirstPlace[BMax.length] = i;
 		//Plans: innocent defaults
 		swapplace1 = NOPLANYET;
 		swapplace2 = NOPLANYET;
@@ -148,6 +177,125 @@ public class ManyToOneMatchingProblem
 		return places.length;
 	}//end getNumberOfPlaces
 	
+	public int getNumberOfBs() {
+		return ABPreferencesT[0].length;
+	}//end getNumberOfBs
+	
+	public int getAInPlace(int place) {
+		return (places[place] == EMPTYPLACE) ? -1 : places[place];
+	}//end getAInPlace
+	
+	public int getBOfPlace(int place) {
+		return BPlaces[place];
+	}//end getBOfPlace
+	
+	/**
+	 * @param b, a B, or the number of B's
+	 * @return the first place of the B; its places run up to the first place
+	 *    of the next B, or the number of places
+	 */
+	public int getFirstPlaceOfB(int b) {
+		return BFirstPlace[b];
+	}//end getFirstPlaceOfB
+	
+	/**
+	 * @param b, a B
+	 * @return number of mandatory places of the B: the minimum number of A's
+	 */
+	public int getNumberOfMandatoryPlacesOfB(int b) {
+		int count = 0;
+		for (int j=BFirstPlace[b]; j<BFirstPlace[b+1]; j++) {
+			if (PlaceMandatory[j])
+				count++;
+		}//next j
+		return count;
+	}//end getNumberOfMandatoryPlacesOfB
+	
+	/**
+	 * @return the (transformed) preference of A a for B b, as used in the cost
+	 */
+	public long getPreference(int a, int b) {
+		return ABPreferencesT[a][b];
+	}//end getPreference
+	
+	/**
+	 * Choose the order in which generateDeterministicMove tries the A's for
+	 * a place: by increasing preference for the B of the place (true), or
+	 * by increasing A-id (false, the default). The set of nodes in the tree
+	 * is the same, but with preference order a depth-first search finds good
+	 * solutions early, which makes bounding more effective.
+	 * @param bestfirstordering, try the most preferred A's first?
+	 */
+	public void setBestFirstOrdering(boolean bestfirstordering) {
+		this.bestfirstordering = bestfirstordering;
+		if (bestfirstordering && AOrderForB == null)
+			initAOrderForB();
+	}//end setBestFirstOrdering
+	
+	public boolean isBestFirstOrdering() {
+		return bestfirstordering;
+	}//end isBestFirstOrdering
+	
+	/**
+	 * Choose how initGoalState creates the initial goal state
+	 * @param method, INITINORDER (the default): A's in order of id, or
+	 *    INITREGRET: greedy, A's in order of regret, then improved by cycles
+	 *    of moves, or
+	 *    INITPRIOR: an earlier solution, repaired, see setPriorAssignment
+	 */
+	public void setInitGoalStateMethod(String method) {
+		this.initgoalstatemethod = method;
+	}//end setInitGoalStateMethod
+	
+	public String getInitGoalStateMethod() {
+		return initgoalstatemethod;
+	}//end getInitGoalStateMethod
+	
+	/**
+	 * Give an earlier solution to start from, typically of the same problem
+	 * before some of its data changed. Used by initGoalState with method
+	 * INITPRIOR, which repairs it into a feasible solution of the problem
+	 * as it is now and confines the random moves to the changed part.
+	 * @param assignedB, for each A: its B in the earlier solution, or -1 for
+	 *    an A that is new or was not placed; it is not changed
+	 */
+	public void setPriorAssignment(int[] assignedB) {
+		this.priorassignment = assignedB;
+	}//end setPriorAssignment
+	
+	/**
+	 * Confine the random moves to the places of some of the B's: each swap
+	 * has at least one of its two places there. The other place can be 
+	 * anywhere, so the A's in the focus can still go to any B.
+	 * @param focusB, for each B: is it in the focus? null: no focus
+	 */
+	public void setMoveFocus(boolean[] focusB) {
+		if (focusB == null) {
+			focusplaces = null;
+			return;
+		}
+		int n = 0;
+		for (int j=0; j<places.length; j++) {
+			if (focusB[BPlaces[j]])
+				n++;
+		}//next j
+		int[] focus = new int[n];
+		n = 0;
+		for (int j=0; j<places.length; j++) {
+			if (focusB[BPlaces[j]])
+				focus[n++] = j;
+		}//next j
+		//an empty focus would forbid all moves, so it means: no focus
+		focusplaces = (n > 0) ? focus : null;
+	}//end setMoveFocus
+	
+	/**
+	 * @return number of places in the focus of the random moves, 0 if none
+	 */
+	public int getMoveFocusSize() {
+		return (focusplaces == null) ? 0 : focusplaces.length;
+	}//end getMoveFocusSize
+	
 
 	//shared public / private methods between both technique-families
 
@@ -206,9 +354,28 @@ public class ManyToOneMatchingProblem
 		this.places = s1.getPlaces();
 		this.isAmatched = s1.isAmatched();
 		this.numAToMatch = s1.getNumAToMatch();
+		this.matchedhash = calcMatchedHash();
 		this.addableA = -1; //we should start without search history (determinstic only)
 	}//end setState
 	
+	/**
+	 * Copy this problem, including the subclass it might be. The fixed problem 
+	 * data arrays are shared, while the state arrays are copied.
+	 * @return the copy, with the same state as this problem
+	 */
+	public Problem problemClone() {
+		ManyToOneMatchingProblem c = null;
+		try {
+			c = (ManyToOneMatchingProblem) super.clone();
+			c.places = places.clone();
+			if (isAmatched != null) 
+				c.isAmatched = isAmatched.clone();
+		} catch (CloneNotSupportedException e) {
+			e.printStackTrace();
+		}
+		return c;
+	}//end problemClone
+	
 	/**
 	 * Describe the current state - this one has been used for debugging
 	 * == take care it shows transformed preferences ==
@@ -285,6 +452,21 @@ public class ManyToOneMatchingProblem
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.StochasticOptimisationProblem#initGoalState()
 	 * 
+	 * The method chosen by setInitGoalStateMethod is used, see below.
+	 */
+	@Override
+	public void initGoalState() throws Exception {
+		if (INITINORDER.equals(initgoalstatemethod))
+			initGoalStateInOrder();
+		else if (INITREGRET.equals(initgoalstatemethod))
+			initGoalStateByRegret();
+		else if (INITPRIOR.equals(initgoalstatemethod))
+			initGoalStateFromPrior();
+		else
+			throw new Exception("Unknown method for the initial goal state: "+initgoalstatemethod);
+	}//end initGoalState
+	
+	/**
 	 * We create an initial goal state by arbitrarily filling the first numberOfAs
 	 * places just in order: student 0 in place 0, etcetera.
 	 * We take care to honour the mandatory places, so we first fill only those!
@@ -292,8 +474,7 @@ public class ManyToOneMatchingProblem
 	 * 
 	 * A nice upgrade would be to make the initial goal state random.
 	 */
-	@Override
-	public void initGoalState() throws Exception {
+	protected void initGoalStateInOrder() throws Exception {
 		//Prefill with EMPTYPLACE
 		for (int j=0; j<places.length; j++) {
 			places[j] = EMPTYPLACE;			
@@ -339,7 +520,550 @@ public class ManyToOneMatchingProblem
 		if (!mandatoryReady) {
 			throw new Exception("Not enough A's to fill all mandatory places required by the B's");
 		}
-	}//end initGoalState
+	}//end initGoalStateInOrder
+	
+	/**
+	 * We create an initial goal state greedily: regret-ordered greedy start,
+	 * see completeAssignment, improved by cancelNegativeCycles.
+	 */
+	protected void initGoalStateByRegret() throws Exception {
+		int[] assignedB = new int[numberOfAs];
+		Arrays.fill(assignedB, -1);
+		completeAssignment(assignedB);
+		cancelNegativeCycles(assignedB);
+		int[] filled = placesFromAssignment(assignedB);
+		System.arraycopy(filled, 0, places, 0, places.length);
+	}//end initGoalStateByRegret
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.LocalSearchProblem#initRandomizedGreedyState(Random, int)
+	 * 
+	 * As completeAssignment by regret, mandatory places first, but the next A is
+	 * chosen at random among the A's with the cheapest best B with room.
+	 * The B-orders of the A's are derived data that is shared by the copies
+	 * of the problem, so call this once before copying it for other threads.
+	 */
+	@Override
+	public void initRandomizedGreedyState(Random random, int rclsize) throws Exception {
+		int[] assignedB = new int[numberOfAs];
+		Arrays.fill(assignedB, -1);
+		completeAssignment(assignedB, random, rclsize);
+		int[] filled = placesFromAssignment(assignedB);
+		System.arraycopy(filled, 0, places, 0, places.length);
+	}//end initRandomizedGreedyState
+	
+	/**
+	 * We create an initial goal state from the earlier solution given by
+	 * setPriorAssignment. The problem may have changed since: A's added 
+	 * (they come in unassigned) or removed, B's with fewer places or more
+	 * mandatory ones. completeAssignment repairs this, keeping all other A's
+	 * where they were. The earlier solution was (nearly) optimal, so only
+	 * the neighbourhood of the changes needs a search. The random moves get
+	 * a focus on the B's that an A was moved from or to, the B's that the 
+	 * moved A's prefer over their new B, and the B's of any swap that lowers
+	 * the cost: an earlier solution that was optimal for swaps only has 
+	 * those where preferences changed. A technique that starts from here 
+	 * with a low temperature then re-solves in a fraction of the time of a
+	 * full run. Without changes the focus stays off.
+	 */
+	protected void initGoalStateFromPrior() throws Exception {
+		if (priorassignment == null || priorassignment.length != numberOfAs)
+			throw new Exception("No prior assignment for the "+numberOfAs+" A's given");
+		int numberOfBs = ABPreferencesT[0].length;
+		int[] assignedB = new int[numberOfAs];
+		for (int a=0; a<numberOfAs; a++) {
+			int b = priorassignment[a];
+			assignedB[a] = (b >= 0 && b < numberOfBs) ? b : -1;
+		}//next a
+		completeAssignment(assignedB);
+		boolean[] focusB = new boolean[numberOfBs];
+		boolean changed = false;
+		for (int a=0; a<numberOfAs; a++) {
+			int b = assignedB[a];
+			if (b != priorassignment[a]) {
+				changed = true;
+				focusB[b] = true;
+				if (priorassignment[a] >= 0 && priorassignment[a] < numberOfBs)
+					focusB[priorassignment[a]] = true;
+				for (int b1=0; b1<numberOfBs; b1++) {
+					if (ABPreferencesT[a][b1] < ABPreferencesT[a][b])
+						focusB[b1] = true;
+				}//next b1
+			}//end if
+		}//next a
+		int[] filled = placesFromAssignment(assignedB);
+		System.arraycopy(filled, 0, places, 0, places.length);
+		//swaps that are allowed and lower the cost
+		for (int i=0; i<places.length; i++) {
+			for (int j=i+1; j<places.length; j++) {
+				if (BPlaces[i] == BPlaces[j]
+						|| places[i] == EMPTYPLACE && (places[j] == EMPTYPLACE || PlaceMandatory[j])
+						|| places[j] == EMPTYPLACE && PlaceMandatory[i])
+					continue;
+				long delta = preferenceOfPlacedStudentForOtherPlace(i, j) 
+						+ preferenceOfPlacedStudentForOtherPlace(j, i)
+						- preferenceOfPlacedStudent(i) - preferenceOfPlacedStudent(j);
+				if (delta < 0) {
+					changed = true;
+					focusB[BPlaces[i]] = true;
+					focusB[BPlaces[j]] = true;
+				}
+			}//next j
+		}//next i
+		setMoveFocus(changed ? focusB : null);
+	}//end initGoalStateFromPrior
+	
+	/**
+	 * Turn a partial assignment of A's to B's into a complete and feasible 
+	 * one: each A gets a B, no B gets more A's than it has places, and all 
+	 * mandatory places get an A. The A's that are assigned keep their B where
+	 * possible: A's are only taken away from a B that is over its capacity 
+	 * (the ones that cost most), or that has more than its mandatory number
+	 * while another B has mandatory places left that no unassigned A can fill
+	 * (the ones that cost least extra).
+	 * 
+	 * The unassigned A's are then added one by one, each to the B it prefers
+	 * most among the B's that still have room. The order is by regret: the A
+	 * that would lose most by not getting its best B (the gap between its 
+	 * best and second best B) goes first, as others can more easily go 
+	 * elsewhere. In a first phase only the mandatory places count as room, 
+	 * until they are all filled; in a second phase the remaining A's get the
+	 * other places.
+	 * 
+	 * Each A has its B's sorted by preference, and a pointer to the first one
+	 * that still has room; B's only fill up, so the pointers only go forward. 
+	 * The regrets are kept in a priority queue that is updated lazily: an 
+	 * entry is checked when it comes out, and put back if it is outdated. 
+	 * This takes O(A.B log B) time for the sorting plus O(A log A) for the
+	 * queue, apart from the outdated entries, which are usually few.
+	 * @param assignedB, for each A: its B, or -1 if unassigned; is updated
+	 * @throws Exception, if there are not enough places or A's
+	 */
+	protected void completeAssignment(int[] assignedB) throws Exception {
+		completeAssignment(assignedB, null, 0);
+	}//end completeAssignment
+	
+	/**
+	 * Same, but the unassigned A's are added by randomized greedy choice
+	 * if a source of randomness is given, see initRandomizedGreedyState
+	 * @param random, the source of randomness, or null: by regret
+	 * @param rclsize, number of cheapest assignments to choose from
+	 */
+	private void completeAssignment(int[] assignedB, Random random, int rclsize) 
+			throws Exception {
+		int numberOfBs = ABPreferencesT[0].length;
+		if (numberOfAs > places.length)
+			throw new Exception("Not enough places for all of the As offered by the Bs.");
+		//mandatory places and all places per B
+		int[] mandatory = new int[numberOfBs];
+		int[] room = new int[numberOfBs];
+		int nmandatory = 0;
+		for (int j=0; j<places.length; j++) {
+			room[BPlaces[j]]++;
+			if (PlaceMandatory[j]) {
+				mandatory[BPlaces[j]]++;
+				nmandatory++;
+			}
+		}//next j
+		if (nmandatory > numberOfAs)
+			throw new Exception("Not enough A's to fill all mandatory places required by the B's");
+		int[] count = new int[numberOfBs];
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] != -1)
+				count[assignedB[a]]++;
+		}//next a
+		//a B over its capacity loses its most expensive A's
+		for (int b=0; b<numberOfBs; b++) {
+			while (count[b] > room[b]) {
+				int worst = -1;
+				for (int a=0; a<numberOfAs; a++) {
+					if (assignedB[a] == b && 
+							(worst == -1 || ABPreferencesT[a][b] > ABPreferencesT[worst][b]))
+						worst = a;
+				}//next a
+				assignedB[worst] = -1;
+				count[b]--;
+			}//end while
+		}//next b
+		//each A's B's in order of preference
+		if (BOrderForA == null)
+			initBOrderForA();
+		int[][] BOrder = BOrderForA;
+		int unassigned = 0;
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] == -1)
+				unassigned++;
+		}//next a
+		//phase 1: mandatory places that are still open
+		int[] mandatoryroom = new int[numberOfBs];
+		int open = 0;
+		for (int b=0; b<numberOfBs; b++) {
+			mandatoryroom[b] = Math.max(0, mandatory[b] - count[b]);
+			open += mandatoryroom[b];
+		}//next b
+		assign(BOrder, mandatoryroom, assignedB, Math.min(open, unassigned), random, rclsize);
+		for (int b=0; b<numberOfBs; b++) {
+			while (mandatoryroom[b] > 0) {
+				//no unassigned A left: move the A that costs least extra
+				//from a B that has more than its mandatory A's
+				int move = -1;
+				long extra = 0;
+				for (int a=0; a<numberOfAs; a++) {
+					int b1 = assignedB[a];
+					if (b1 != -1 && b1 != b && count[b1] > mandatory[b1]) {
+						long e = ABPreferencesT[a][b] - ABPreferencesT[a][b1];
+						if (move == -1 || e < extra) {
+							move = a;
+							extra = e;
+						}
+					}
+				}//next a
+				if (move == -1)
+					throw new Exception("Not enough A's to fill all mandatory places required by the B's");
+				count[assignedB[move]]--;
+				assignedB[move] = b;
+				mandatoryroom[b]--;
+			}//end while
+		}//next b
+		//phase 2: the remaining A's in the remaining places
+		Arrays.fill(count, 0);
+		unassigned = 0;
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] != -1)
+				count[assignedB[a]]++;
+			else unassigned++;
+		}//next a
+		for (int b=0; b<numberOfBs; b++) {
+			room[b] -= count[b];
+		}//next b
+		assign(BOrder, room, assignedB, unassigned, random, rclsize);
+	}//end completeAssignment
+	
+	/**
+	 * Assign a number of the unassigned A's, by regret or randomized greedy
+	 */
+	private void assign(int[][] BOrder, int[] room, int[] assignedB, int count, 
+			Random random, int rclsize) {
+		if (random == null)
+			assignByRegret(BOrder, room, assignedB, count);
+		else
+			assignRandomizedGreedy(BOrder, room, assignedB, count, random, rclsize);
+	}//end assign
+	
+	/**
+	 * Make a places array for an assignment of A's to B's: per B its A's in 
+	 * the first places of its block, so the mandatory ones (which come first 
+	 * in a block) get filled
+	 * @param assignedB, for each A: its B, complete and feasible
+	 * @return the places array
+	 */
+	protected int[] placesFromAssignment(int[] assignedB) {
+		int[] filled = new int[places.length];
+		int[] next = new int[ABPreferencesT[0].length]; //next place of each B to fill
+		for (int j=places.length-1; j>=0; j--) {
+			next[BPlaces[j]] = j;
+			filled[j] = EMPTYPLACE;
+		}//next j
+		for (int a=0; a<numberOfAs; a++) {
+			filled[next[assignedB[a]]++] = a;
+		}//next a
+		return filled;
+	}//end placesFromAssignment
+	
+	/**
+	 * Improve a complete and feasible assignment by moving A's around in 
+	 * cycles of B's that lower the cost. The B's are the nodes of a graph;
+	 * the edge from B1 to B2 is the cheapest move of an A from B1 to B2, its
+	 * weight is the change in cost. An extra node stands for a B with room 
+	 * to spare: the edge from a B to it is there if the B can take one more
+	 * A, the edge from it to a B if the B can lose one. Along a cycle of 
+	 * negative weight each B gives one A to the next one, so all counts 
+	 * stay within bounds and the cost goes down. 
+	 * 
+	 * The cycles are found by Bellman-Ford passes, each O(B.B), with a look
+	 * at the parent pointers after each pass: a cycle there is a negative 
+	 * one, and there usually is one after a few passes. Only the edges out 
+	 * of the B's on the cycle need to be computed again, each O(B) per A in
+	 * the B. When no cycle is left the assignment is optimal (it is a 
+	 * minimum cost flow); the regret start leaves few, in the order of a 
+	 * tenth of the number of A's.
+	 * @param assignedB, for each A: its B, complete and feasible; is updated
+	 */
+	private void cancelNegativeCycles(int[] assignedB) {
+		int numberOfBs = ABPreferencesT[0].length;
+		int spare = numberOfBs;    //the extra node
+		int n = numberOfBs + 1;
+		int[] count = new int[numberOfBs];
+		int[] mandatory = new int[numberOfBs];
+		int[] room = new int[numberOfBs];
+		for (int j=0; j<places.length; j++) {
+			room[BPlaces[j]]++;
+			if (PlaceMandatory[j])
+				mandatory[BPlaces[j]]++;
+		}//next j
+		for (int a=0; a<numberOfAs; a++) {
+			count[assignedB[a]]++;
+		}//next a
+		long[][] weight = new long[n][n];
+		int[][] mover = new int[numberOfBs][numberOfBs]; //the A of each move
+		for (int b=0; b<numberOfBs; b++) {
+			cheapestMoves(b, assignedB, weight, mover);
+		}//next b
+		long[] distance = new long[n];
+		int[] parent = new int[n];
+		int[] seen = new int[n];
+		int[] as = new int[numberOfBs];  //the moves along a cycle
+		int[] to = new int[numberOfBs];
+		while (true) {
+			for (int b=0; b<numberOfBs; b++) {
+				weight[b][spare] = (count[b] < room[b]) ? 0 : NOEDGE;
+				weight[spare][b] = (count[b] > mandatory[b]) ? 0 : NOEDGE;
+			}//next b
+			Arrays.fill(distance, 0);
+			Arrays.fill(parent, -1);
+			int cycle = -1;
+			for (int pass=0; pass<n && cycle == -1; pass++) {
+				boolean changed = false;
+				for (int u=0; u<n; u++) {
+					for (int v=0; v<n; v++) {
+						if (u == v || weight[u][v] == NOEDGE)
+							continue;
+						if (distance[u] + weight[u][v] < distance[v]) {
+							distance[v] = distance[u] + weight[u][v];
+							parent[v] = u;
+							changed = true;
+						}
+					}//next v
+				}//next u
+				if (!changed)
+					break;
+				cycle = findCycle(parent, seen);
+			}//next pass
+			if (cycle == -1)
+				break;
+			int k = 0;
+			int v = cycle;
+			do {
+				int u = parent[v];
+				if (u != spare && v != spare) {
+					as[k] = mover[u][v];
+					to[k] = v;
+					k++;
+				}
+				v = u;
+			} while (v != cycle);
+			for (int i=0; i<k; i++) {
+				count[assignedB[as[i]]]--;
+				assignedB[as[i]] = to[i];
+				count[to[i]]++;
+			}//next i
+			v = cycle;
+			do {
+				if (v != spare)
+					cheapestMoves(v, assignedB, weight, mover);
+				v = parent[v];
+			} while (v != cycle);
+		}//end while
+	}//end cancelNegativeCycles
+	
+	/**
+	 * The cheapest move of an A from a B to each other B, for 
+	 * cancelNegativeCycles
+	 */
+	private void cheapestMoves(int b, int[] assignedB, long[][] weight, int[][] mover) {
+		int numberOfBs = mover.length;
+		Arrays.fill(weight[b], 0, numberOfBs, NOEDGE);
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] != b)
+				continue;
+			for (int b2=0; b2<numberOfBs; b2++) {
+				long change = ABPreferencesT[a][b2] - ABPreferencesT[a][b];
+				if (b2 != b && change < weight[b][b2]) {
+					weight[b][b2] = change;
+					mover[b][b2] = a;
+				}
+			}//next b2
+		}//next a
+	}//end cheapestMoves
+	
+	/**
+	 * A node on a cycle of parent pointers, if there is one
+	 * @param parent, for each node: its parent, or -1
+	 * @param seen, scratch, as long as parent
+	 * @return the node, or -1 if there is no cycle
+	 */
+	private static int findCycle(int[] parent, int[] seen) {
+		Arrays.fill(seen, 0);
+		for (int start=0; start<parent.length; start++) {
+			int v = start;
+			while (v != -1 && seen[v] == 0) {
+				seen[v] = start + 1;
+				v = parent[v];
+			}//end while
+			if (v != -1 && seen[v] == start + 1)
+				return v;  //came back to a node of this walk
+		}//next start
+		return -1;
+	}//end findCycle
+	
+	/**
+	 * Assign a number of the unassigned A's, in order of regret, each to
+	 * its most preferred B that still has room
+	 * @param BOrder, for each A: the B's by preference
+	 * @param room, for each B: number of A's it can still take, is updated
+	 * @param assignedB, for each A: its B or -1, is updated
+	 * @param count, number of A's to assign
+	 */
+	private void assignByRegret(int[][] BOrder, int[] room, int[] assignedB, int count) {
+		int[] pointer = new int[numberOfAs]; //first B with room, for each A
+		//queue entries: {regret, A, best B}, highest regret first
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>(
+			Math.max(1, numberOfAs), new Comparator<long[]>() {
+				public int compare(long[] e1, long[] e2) {
+					if (e1[0] != e2[0])
+						return (e1[0] > e2[0]) ? -1 : 1;
+					return (e1[1] < e2[1]) ? -1 : (e1[1] > e2[1] ? 1 : 0);
+				}
+			});
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] == -1) {
+				long[] e = regretEntry(a, BOrder[a], room, pointer);
+				if (e != null)
+					queue.add(e);
+			}
+		}//next a
+		while (count > 0 && !queue.isEmpty()) {
+			long[] e = queue.poll();
+			int a = (int) e[1];
+			long[] now = regretEntry(a, BOrder[a], room, pointer);
+			if (now == null)
+				continue; //no room left for this A in this phase
+			if (now[0] != e[0] || now[2] != e[2]) {
+				queue.add(now); //outdated: back in the queue at its new position
+				continue;
+			}
+			int b = (int) e[2];
+			assignedB[a] = b;
+			room[b]--;
+			count--;
+		}//end while
+	}//end assignByRegret
+	
+	/**
+	 * Assign a number of the unassigned A's one by one. Each A's cheapest 
+	 * assignment is to its most preferred B that still has room; of these,
+	 * the rclsize cheapest form the restricted candidate list, and one of 
+	 * them is chosen at random.
+	 * @param BOrder, for each A: the B's by preference
+	 * @param room, for each B: number of A's it can still take, is updated
+	 * @param assignedB, for each A: its B or -1, is updated
+	 * @param count, number of A's to assign
+	 * @param random, the source of randomness
+	 * @param rclsize, length of the restricted candidate list
+	 */
+	private void assignRandomizedGreedy(int[][] BOrder, int[] room, int[] assignedB, 
+			int count, Random random, int rclsize) {
+		int[] pointer = new int[numberOfAs]; //first B with room, for each A
+		int[] candidates = new int[numberOfAs]; //the unassigned A's
+		int n = 0;
+		for (int a=0; a<numberOfAs; a++) {
+			if (assignedB[a] == -1)
+				candidates[n++] = a;
+		}//next a
+		rclsize = Math.max(1, rclsize);
+		int[] rcl = new int[rclsize];       //A's, cheapest first
+		long[] rclcost = new long[rclsize];
+		while (count > 0 && n > 0) {
+			int size = 0;
+			for (int i=n-1; i>=0; i--) {
+				int a = candidates[i];
+				while (pointer[a] < BOrder[a].length && room[BOrder[a][pointer[a]]] == 0) {
+					pointer[a]++;
+				}//end while
+				if (pointer[a] == BOrder[a].length) {
+					candidates[i] = candidates[--n]; //no room left for this A
+					continue;
+				}
+				long cost = ABPreferencesT[a][BOrder[a][pointer[a]]];
+				if (size == rclsize && cost >= rclcost[size-1])
+					continue;
+				//insertion into the short sorted list
+				int k = (size < rclsize) ? size++ : size - 1;
+				while (k > 0 && rclcost[k-1] > cost) {
+					rcl[k] = rcl[k-1];
+					rclcost[k] = rclcost[k-1];
+					k--;
+				}//end while
+				rcl[k] = a;
+				rclcost[k] = cost;
+			}//next i
+			if (size == 0)
+				break;
+			int a = rcl[random.nextInt(size)];
+			int b = BOrder[a][pointer[a]];
+			assignedB[a] = b;
+			room[b]--;
+			count--;
+			int i = 0;
+			while (candidates[i] != a) {
+				i++;
+			}//end while
+			candidates[i] = candidates[--n];
+		}//end while
+	}//end assignRandomizedGreedy
+	
+	/**
+	 * Find the best and second best B with room for an A
+	 * @return queue entry {regret, A, best B}, or null if no B has room
+	 */
+	private long[] regretEntry(int a, int[] order, int[] room, int[] pointer) {
+		while (pointer[a] < order.length && room[order[pointer[a]]] == 0) {
+			pointer[a]++;
+		}//end while
+		if (pointer[a] == order.length)
+			return null;
+		int best = order[pointer[a]];
+		int k = pointer[a] + 1;
+		while (k < order.length && room[order[k]] == 0) {
+			k++;
+		}//end while
+		long regret = (k < order.length) ? 
+				ABPreferencesT[a][order[k]] - ABPreferencesT[a][best] : 
+				Long.MAX_VALUE / 2; //only one B left: it must go first
+		return new long[] {regret, a, best};
+	}//end regretEntry
+	
+	/**
+	 * For each A: sort the B-ids by increasing preference
+	 */
+	private void initBOrderForA() {
+		int numberOfBs = ABPreferencesT[0].length;
+		int[][] order = new int[numberOfAs][];
+		for (int a=0; a<numberOfAs; a++) {
+			order[a] = sortedBsForA(a, numberOfBs);
+		}//next a
+		BOrderForA = order;
+	}//end initBOrderForA
+	
+	/**
+	 * @return the B-ids sorted by increasing preference of A a
+	 */
+	private int[] sortedBsForA(final int a, int numberOfBs) {
+		Integer[] bs = new Integer[numberOfBs];
+		for (int b=0; b<numberOfBs; b++) {
+			bs[b] = b;
+		}//next b
+		Arrays.sort(bs, new Comparator<Integer>() {
+			public int compare(Integer b1, Integer b2) {
+				return Long.compare(ABPreferencesT[a][b1], ABPreferencesT[a][b2]);
+			}
+		});
+		int[] order = new int[numberOfBs];
+		for (int b=0; b<numberOfBs; b++) {
+			order[b] = bs[b];
+		}//next b
+		return order;
+	}//end sortedBsForA
 
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.StochasticOptimisationProblem#generateRandomMove()
@@ -349,11 +1073,15 @@ public class ManyToOneMatchingProblem
 	 * - the chosen places are equal OR
 	 * - both places are empty OR
 	 * - one of the places is empty and the other place mandatory to fill
+	 * If a move focus is set, the first place is one of the focus places.
 	 */
 	@Override
 	public void generateRandomMove() {
 		do { //we do it at least once...
-			swapplace1 = (int) Math.floor(Math.random()*places.length);
+			if (focusplaces == null)
+				swapplace1 = (int) Math.floor(Math.random()*places.length);
+			else
+				swapplace1 = focusplaces[(int) Math.floor(Math.random()*focusplaces.length)];
 			swapplace2 = (int) Math.floor(Math.random()*places.length);						
 		} while (
 			swapplace1 == swapplace2
@@ -362,6 +1090,35 @@ public class ManyToOneMatchingProblem
 			|| places[swapplace2] == EMPTYPLACE && PlaceMandatory[swapplace1]
 		);
 	}//end generateRandomMove
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.LocalSearchProblem#planSwap(int, int)
+	 * 
+	 * The same swaps are allowed as in generateRandomMove
+	 */
+	@Override
+	public boolean planSwap(int place1, int place2) {
+		if (!isSwapAllowed(place1, place2))
+			return false;
+		swapplace1 = place1;
+		swapplace2 = place2;
+		return true;
+	}//end planSwap
+	
+	/**
+	 * Would a swap of the contents of two places lead to a goal state? It
+	 * only reads the state, so unlike planSwap it may be asked from several
+	 * threads at once, as long as none changes the state
+	 * @param place1, first place
+	 * @param place2, second place
+	 * @return is the swap allowed?
+	 */
+	public boolean isSwapAllowed(int place1, int place2) {
+		return !(place1 == place2
+				|| places[place1] == EMPTYPLACE && places[place2] == EMPTYPLACE
+				|| places[place1] == EMPTYPLACE && PlaceMandatory[place2]
+				|| places[place2] == EMPTYPLACE && PlaceMandatory[place1]);
+	}//end isSwapAllowed
 
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.StochasticOptimisationProblem#getDeltaCostRandomMove()
@@ -393,6 +1150,170 @@ public class ManyToOneMatchingProblem
 
 	
 	
+	/**
+	 * Exact repair for large neighbourhood search: the A's in the places of
+	 * the given B's are taken out and put back in these places in the 
+	 * cheapest way, with the mandatory ones filled. This is an assignment 
+	 * problem, solved by the AssignmentSolver, with a column per place and 
+	 * as rows the A's plus "empty" rows, which cost nothing in places that
+	 * are not mandatory and too much in mandatory ones. Only the places of
+	 * these B's are read and written, so for disjoint sets of B's it may be
+	 * called from several threads at once.
+	 * @param bs, the B's
+	 * @param count, number of B's in bs to use
+	 * @return the change in cost, never positive
+	 */
+	public long reoptimizeBs(int[] bs, int count) {
+		int n = 0;
+		for (int k=0; k<count; k++) {
+			n += BFirstPlace[bs[k]+1] - BFirstPlace[bs[k]];
+		}//next k
+		int[] columns = new int[n]; //the places
+		int[] as = new int[n];      //the A's
+		int m = 0;
+		int c = 0;
+		long oldcost = 0;
+		long maxcost = 1;
+		for (int k=0; k<count; k++) {
+			for (int j=BFirstPlace[bs[k]]; j<BFirstPlace[bs[k]+1]; j++) {
+				columns[c++] = j;
+				if (places[j] != EMPTYPLACE) {
+					as[m++] = places[j];
+					oldcost += ABPreferencesT[places[j]][BPlaces[j]];
+				}
+			}//next j
+		}//next k
+		if (m == 0)
+			return 0;
+		long[][] cost = new long[n][n];
+		for (int r=0; r<m; r++) {
+			for (c=0; c<n; c++) {
+				cost[r][c] = ABPreferencesT[as[r]][BPlaces[columns[c]]];
+				maxcost = Math.max(maxcost, cost[r][c]);
+			}//next c
+		}//next r
+		long forbidden = maxcost * (m + 1); //more than all A's together can cost
+		for (int r=m; r<n; r++) {
+			for (c=0; c<n; c++) {
+				cost[r][c] = PlaceMandatory[columns[c]] ? forbidden : 0;
+			}//next c
+		}//next r
+		int[] columnOf = AssignmentSolver.solve(cost);
+		for (c=0; c<n; c++) {
+			places[columns[c]] = EMPTYPLACE;
+		}//next c
+		long newcost = 0;
+		for (int r=0; r<m; r++) {
+			places[columns[columnOf[r]]] = as[r];
+			newcost += cost[r][columnOf[r]];
+		}//next r
+		return newcost - oldcost;
+	}//end reoptimizeBs
+	
+	
+	//methods for genetic techniques, which keep a population of places
+	//arrays in one buffer: individual i at offset i * getNumberOfPlaces()
+	
+	/**
+	 * Copy the places of the current state into a buffer
+	 * @param buffer, the population buffer
+	 * @param offset, position of the individual to write
+	 */
+	public void copyPlaces(int[] buffer, int offset) {
+		System.arraycopy(places, 0, buffer, offset, places.length);
+	}//end copyPlaces
+	
+	/**
+	 * Make an individual from a buffer the current state (stochastic 
+	 * techniques only: the deterministic bookkeeping is not updated)
+	 * @param buffer, the population buffer
+	 * @param offset, position of the individual to read
+	 */
+	public void setPlaces(int[] buffer, int offset) {
+		System.arraycopy(buffer, offset, places, 0, places.length);
+	}//end setPlaces
+	
+	/**
+	 * Make an assignment of A's to B's the current state (stochastic
+	 * techniques only, as setPlaces)
+	 * @param assignedB, for each A: its B, complete and feasible
+	 */
+	public void setAssignment(int[] assignedB) {
+		System.arraycopy(placesFromAssignment(assignedB), 0, places, 0, places.length);
+	}//end setAssignment
+	
+	/**
+	 * Cost of an individual in a buffer; it only reads the buffer and the
+	 * fixed problem data, so copies of the problem are not needed to call
+	 * it from several threads at once
+	 * @param buffer, the population buffer
+	 * @param offset, position of the individual
+	 * @return the sum of the realized preference values
+	 */
+	public long getCost(int[] buffer, int offset) {
+		long cost = 0;
+		for (int j=0; j<places.length; j++) {
+			int a = buffer[offset + j];
+			if (a != EMPTYPLACE)
+				cost += ABPreferencesT[a][BPlaces[j]];
+		}//next j
+		return cost;
+	}//end getCost
+	
+	/**
+	 * Assignment-preserving crossover. Each A that has the same B in both
+	 * parents keeps it. The other A's get the B of one of the parents, at
+	 * random. Where that puts too many A's in a B, the most expensive ones 
+	 * of these others are taken out again, and completeAssignment puts them
+	 * back, filling any mandatory places that were left open.
+	 * @param buffer, the population buffer; a child buffer may be another one
+	 * @param parent1, offset of the first parent
+	 * @param parent2, offset of the second parent
+	 * @param childbuffer, buffer to write the child to
+	 * @param child, offset of the child
+	 * @param random, the source of randomness
+	 * @throws Exception, if no goal state exists
+	 */
+	public void crossover(int[] buffer, int parent1, int parent2, 
+			int[] childbuffer, int child, Random random) throws Exception {
+		int numberOfBs = ABPreferencesT[0].length;
+		int[] b1 = new int[numberOfAs];
+		int[] b2 = new int[numberOfAs];
+		for (int j=0; j<places.length; j++) {
+			if (buffer[parent1 + j] != EMPTYPLACE)
+				b1[buffer[parent1 + j]] = BPlaces[j];
+			if (buffer[parent2 + j] != EMPTYPLACE)
+				b2[buffer[parent2 + j]] = BPlaces[j];
+		}//next j
+		int[] assignedB = new int[numberOfAs];
+		int[] count = new int[numberOfBs];
+		for (int a=0; a<numberOfAs; a++) {
+			assignedB[a] = (b1[a] == b2[a] || random.nextBoolean()) ? b1[a] : b2[a];
+			count[assignedB[a]]++;
+		}//next a
+		int[] room = new int[numberOfBs];
+		for (int j=0; j<places.length; j++) {
+			room[BPlaces[j]]++;
+		}//next j
+		for (int b=0; b<numberOfBs; b++) {
+			while (count[b] > room[b]) {
+				//both parents fit, so there is an A that they disagree on
+				int worst = -1;
+				for (int a=0; a<numberOfAs; a++) {
+					if (assignedB[a] == b && b1[a] != b2[a] &&
+							(worst == -1 || ABPreferencesT[a][b] > ABPreferencesT[worst][b]))
+						worst = a;
+				}//next a
+				assignedB[worst] = -1;
+				count[b]--;
+			}//end while
+		}//next b
+		completeAssignment(assignedB);
+		int[] filled = placesFromAssignment(assignedB);
+		System.arraycopy(filled, 0, childbuffer, child, places.length);
+	}//end crossover
+	
+	
 	//methods needed by the deterministic techniques
 	//We start with all places empty. In each move a single place is filled
 	//using an A or - if allowed - EMPTYPLACE. The depth of the tree is equal to the number of available places
@@ -401,6 +1322,10 @@ public class ManyToOneMatchingProblem
 	//When we retreat to an earlier visited node, the same A's are unmatched as
 	//on earlier visits, so we are safe in looking for the first higher unmatched 
 	//A. We do need to remember the previous move we did from this node.
+	//The places of one B are interchangeable, so we only generate them in a
+	//canonical order: A-ids increasing within the places of the same B, with
+	//EMPTYPLACE last. Each distinct assignment is then visited only once,
+	//instead of once for every ordering of its A's over the places of a B.
 
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#initState()
@@ -416,6 +1341,11 @@ public class ManyToOneMatchingProblem
 		for (int j=0; j<isAmatched.length; j++) {
 			isAmatched[j]=false;
 		}
+		numAToMatch = numberOfAs;
+		addableA = NOPLANYET; //a second run should not inherit search history
+		if (zobristA == null)
+			initZobrist();
+		matchedhash = 0;
 	}//end initState
 
 	/* (non-Javadoc)
@@ -426,6 +1356,8 @@ public class ManyToOneMatchingProblem
 	 * For keeping track, the previous move is stored with the node and restored
 	 * by the retreat method together with the rest of the state.
 	 * So given the previous try, we need to find the next higher unmatched A
+	 * At a fresh node, we start above the A in the previous place if that
+	 * place belongs to the same B (canonical order, see above).
 	 * 
 	 * @return success, was a new filling (A or EMPTYPLACE) found?
 	 * @param, level, the level of the tree node for which we make a suggestion
@@ -435,8 +1367,11 @@ public class ManyToOneMatchingProblem
 		if (level >= places.length)
 			return false;
 		placetofill = level;
+		if (bestfirstordering)
+			return generateBestFirstMove(level);
 		//Find next unmatched A 
-		if (addableA==NOPLANYET) addableA = -1;
+		if (addableA==NOPLANYET || addableA==-1) 
+			addableA = lowestAddableA(level) - 1;
 		do {
 			addableA++;			
 		} while (
@@ -459,6 +1394,85 @@ public class ManyToOneMatchingProblem
 		}
 	}//end generateDeterministicMove
 	
+	/**
+	 * Variant of generateDeterministicMove that tries the A's in the order of
+	 * AOrderForB for the B of this place. Where we are in that order follows
+	 * from the previous try (addableA, restored on retreat from the move 
+	 * stack of the technique) via ARankForB, so it takes no extra state.
+	 * The canonical order still applies: A-ids lower than lowestAddableA are
+	 * skipped, and EMPTYPLACE comes last.
+	 * @param level, the level of the tree node for which we make a suggestion
+	 * @return success, was a new filling (A or EMPTYPLACE) found?
+	 */
+	private boolean generateBestFirstMove(int level) {
+		if (addableA >= numberOfAs && addableA != NOPLANYET)
+			return false; //EMPTYPLACE was tried, or we were at the end already
+		int b = BPlaces[level];
+		int[] order = AOrderForB[b];
+		int i = (addableA==NOPLANYET || addableA==-1) ? 0 : ARankForB[b][addableA] + 1;
+		int lowest = lowestAddableA(level);
+		while (i < numberOfAs && (isAmatched[order[i]] || order[i] < lowest)) {
+			i++;
+		}//end while
+		if (i < numberOfAs) {
+			addableA = order[i];
+			return true;
+		}
+		//all A's were tried, EMPTYPLACE is tried under the same conditions as above
+		if (!PlaceMandatory[placetofill] && places.length - level > numAToMatch) {
+			addableA = EMPTYPLACE;
+			return true;
+		}
+		addableA = numberOfAs; //at the end of possibilities
+		return false;
+	}//end generateBestFirstMove
+	
+	/**
+	 * Sort the A's by preference for each B, once. Equal preferences keep
+	 * the order of the A-ids.
+	 */
+	private void initAOrderForB() {
+		int numberOfBs = ABPreferencesT[0].length;
+		int[][] order = new int[numberOfBs][numberOfAs];
+		int[][] rank = new int[numberOfBs][numberOfAs];
+		for (int b=0; b<numberOfBs; b++) {
+			final long[] pref = new long[numberOfAs];
+			Integer[] as = new Integer[numberOfAs];
+			for (int a=0; a<numberOfAs; a++) {
+				pref[a] = ABPreferencesT[a][b];
+				as[a] = a;
+			}//next a
+			Arrays.sort(as, new Comparator<Integer>() {
+				public int compare(Integer a1, Integer a2) {
+					return Long.compare(pref[a1], pref[a2]);
+				}
+			}); //a stable sort
+			for (int i=0; i<numberOfAs; i++) {
+				order[b][i] = as[i];
+				rank[b][as[i]] = i;
+			}//next i
+		}//next b
+		ARankForB = rank;
+		AOrderForB = order;
+	}//end initAOrderForB
+	
+	/**
+	 * Lowest A-id that may be put in the place of this level, given the
+	 * canonical order within the places of one B: higher than the A in the
+	 * previous place of the same B. After an EMPTYPLACE only EMPTYPLACE may
+	 * follow, we return numberOfAs then.
+	 * @param level, the level (= place) to fill
+	 * @return lowest A-id to try
+	 */
+	private int lowestAddableA(int level) {
+		if (level == 0 || BPlaces[level-1] != BPlaces[level])
+			return 0; //first place of its B: no restriction
+		else if (places[level-1] == EMPTYPLACE)
+			return numberOfAs;
+		else
+			return places[level-1] + 1;
+	}//end lowestAddableA
+	
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#getDeltaCostDeterministicMove()
 	 * 
@@ -476,18 +1490,49 @@ public class ManyToOneMatchingProblem
 	 */
 	@Override
 	public Move doForwardMove() {
-		//add the A to the planned place
+		//package the move for putting it on the stack
+		Move mv = new ManyToOneMatchingMove(addableA, placetofill);
+		fillPlannedPlace();
+		return mv;
+	}//end doPlannedMove
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#doForwardMove(int[], int[], int)
+	 * 
+	 * Same as above, the move is recorded as addableA and placetofill 
+	 */
+	@Override
+	public void doForwardMove(int[] addables, int[] placestofill, int level) {
+		addables[level] = addableA;
+		placestofill[level] = placetofill;
+		fillPlannedPlace();
+	}//end doForwardMove
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#replayMove(nl.uva.science.esc.search.problems.Move)
+	 */
+	@Override
+	public void replayMove(Move m1) {
+		ManyToOneMatchingMove m = (ManyToOneMatchingMove) m1;
+		this.addableA = m.getAddableA();
+		this.placetofill = m.getPlacetofill();
+		fillPlannedPlace();
+	}//end replayMove
+	
+	/**
+	 * Shared part of doForwardMove and replayMove: add the planned A to the 
+	 * planned place, and arrive at a fresh node
+	 */
+	private void fillPlannedPlace() {
 		places[placetofill] = addableA;
 		if (addableA != EMPTYPLACE) {
 			isAmatched[addableA] = true;
 			numAToMatch--;			
+			matchedhash ^= zobristA[addableA];
 		}
-		//package the move for putting it on the stack
-		Move mv = new ManyToOneMatchingMove(addableA, placetofill);
 		//fresh node: we should start without search history
 		addableA = -1;
-		return mv;
-	}//end doPlannedMove
+	}//end fillPlannedPlace
 	
 	/* (non-Javadoc)
 	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem# goalTest(int level)
@@ -503,20 +1548,202 @@ public class ManyToOneMatchingProblem
 	@Override
 	public void retreatMove(Move m1) {
 		ManyToOneMatchingMove m = (ManyToOneMatchingMove) m1;
+		retreatMove(m.getAddableA(), m.getPlacetofill());
+	}//end retreatMove
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#retreatMove(int, int)
+	 */
+	@Override
+	public void retreatMove(int addableA, int placetofill) {
 		//the move should fit: it should lead back to the original level
-		assert (this.placetofill == m.getLevel()+1); 
+		assert (this.placetofill == placetofill+1); 
 		//restore the move
-		this.addableA = m.getAddableA();
-		this.placetofill = m.getLevel();
+		this.addableA = addableA;
+		this.placetofill = placetofill;
 		//do the move in reverse, to restore the original state
 		places[placetofill] = EMPTYPLACE;
 		if (addableA != EMPTYPLACE) {
 			isAmatched[addableA] = false;
 			numAToMatch++;
+			matchedhash ^= zobristA[addableA];
 		}
 		//note: we keep the history of the node by not deleting placetofill
 	}//end retreatMove
 	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#getStateHash(int)
+	 * 
+	 * Each place is bound to its own level, so two different paths never lead
+	 * to the same filling of places. What the remaining subtree depends on
+	 * is the level plus the set of A's that are still unmatched, and - due to
+	 * the canonical order - the A in the previous place if it has the same B. 
+	 * We hash that, using Zobrist hashing: the XOR of a random key for each
+	 * matched A is kept up to date by every move and retreat, and combined
+	 * with keys for the level and the previous A. So this takes O(1) time.
+	 * (Hashing the (place, A) pairs themselves would not recognise anything,
+	 * as the path to a filling of places is unique.)
+	 */
+	@Override
+	public long getStateHash(int level) {
+		long h = matchedhash ^ zobristLevel[level];
+		if (level > 0 && level < places.length && BPlaces[level-1] == BPlaces[level]) {
+			int prev = places[level-1];
+			h ^= zobristPrev[prev == EMPTYPLACE ? numberOfAs : prev];
+		}
+		return h;
+	}//end getStateHash
+	
+	/**
+	 * Create the random keys for Zobrist hashing. A fixed seed makes the 
+	 * hashes the same from run to run, which helps debugging.
+	 */
+	private void initZobrist() {
+		Random r = new Random(20180331L);
+		long[] za = new long[numberOfAs];
+		long[] zl = new long[places.length + 1];
+		long[] zp = new long[numberOfAs + 1];
+		for (int a=0; a<za.length; a++) 
+			za[a] = r.nextLong();
+		for (int l=0; l<zl.length; l++) 
+			zl[l] = r.nextLong();
+		for (int a=0; a<zp.length; a++) 
+			zp[a] = r.nextLong();
+		zobristLevel = zl;
+		zobristPrev = zp;
+		zobristA = za;
+	}//end initZobrist
+	
+	/**
+	 * Calculate the Zobrist hash of the matched A's from scratch
+	 * @return the hash, 0 if hashing was not initialised yet
+	 */
+	private long calcMatchedHash() {
+		long h = 0;
+		if (zobristA != null && isAmatched != null) {
+			for (int a=0; a<numberOfAs; a++) {
+				if (isAmatched[a])
+					h ^= zobristA[a];
+			}//next a
+		}//end if
+		return h;
+	}//end calcMatchedHash
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#getPackedStateSize()
+	 * 
+	 * The places array is bit-packed: each place takes just enough bits for
+	 * the A-ids plus one extra value that stands for EMPTYPLACE (numberOfAs).
+	 * A place does not straddle two longs.
+	 */
+	@Override
+	public int getPackedStateSize() {
+		int perword = 64 / bitsPerPackedPlace();
+		return (places.length + perword - 1) / perword;
+	}//end getPackedStateSize
+	
+	/**
+	 * @return number of bits needed to pack one place
+	 */
+	private int bitsPerPackedPlace() {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(numberOfAs));
+	}//end bitsPerPackedPlace
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#packState(long[], int)
+	 */
+	@Override
+	public void packState(long[] buf, int offset) {
+		int bits = bitsPerPackedPlace();
+		int perword = 64 / bits;
+		int words = getPackedStateSize();
+		for (int w=0; w<words; w++) {
+			long word = 0;
+			int end = Math.min(places.length, (w + 1) * perword);
+			for (int i=end-1; i>=w*perword; i--) {
+				long v = (places[i] == EMPTYPLACE) ? numberOfAs : places[i];
+				word = (word << bits) | v;
+			}//next i
+			buf[offset + w] = word;
+		}//next w
+	}//end packState
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.DeterministicSearchProblem#unpackState(long[], int, int)
+	 * 
+	 * Places from the level onwards are not decided yet, so they stay empty.
+	 * The redundant state info (isAmatched, numAToMatch) is rebuilt.
+	 */
+	@Override
+	public void unpackState(long[] buf, int offset, int level) {
+		int bits = bitsPerPackedPlace();
+		int perword = 64 / bits;
+		long mask = (1L << bits) - 1;
+		for (int j=0; j<isAmatched.length; j++) {
+			isAmatched[j] = false;
+		}
+		numAToMatch = numberOfAs;
+		for (int i=0; i<places.length; i++) {
+			if (i < level) {
+				int v = (int) ((buf[offset + i / perword] >>> ((i % perword) * bits)) & mask);
+				if (v == numberOfAs) {
+					places[i] = EMPTYPLACE;
+				}
+				else {
+					places[i] = v;
+					isAmatched[v] = true;
+					numAToMatch--;
+				}
+			}
+			else places[i] = EMPTYPLACE;
+		}//next i
+		matchedhash = calcMatchedHash();
+		addableA = -1; //we should start without search history
+	}//end unpackState
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.HeuristicSearchProblem#getHeuristicCost(int)
+	 * 
+	 * Every A that is still unmatched will end up in one of the remaining
+	 * places, which belong to the B of the current place or to later B's.
+	 * So its cost is at least its lowest preference among those B's.
+	 * The sum of these lower bounds is admissible, and also consistent: a
+	 * move never lowers the estimate by more than the cost it adds.
+	 */
+	@Override
+	public long getHeuristicCost(int level) {
+		if (level >= places.length)
+			return 0;
+		if (minPrefFromB == null)
+			minPrefFromB = calcMinPrefFromB();
+		long[] minPref = minPrefFromB[BPlaces[level]];
+		long h = 0;
+		for (int a=0; a<numberOfAs; a++) {
+			if (!isAmatched[a]) 
+				h += minPref[a];
+		}//next a
+		return h;
+	}//end getHeuristicCost
+	
+	/**
+	 * For each B and each A: the lowest transformed preference of A for
+	 * this B or any of the B's with a higher id. 
+	 * Places are ordered by B, so these are the B's still to come in the tree.
+	 * @return the table, indexed [B-id][A-id]
+	 */
+	private long[][] calcMinPrefFromB() {
+		int numberOfBs = ABPreferencesT[0].length;
+		long[][] minPref = new long[numberOfBs][numberOfAs];
+		for (int a=0; a<numberOfAs; a++) {
+			long min = Long.MAX_VALUE;
+			for (int b=numberOfBs-1; b>=0; b--) {
+				min = Math.min(min, ABPreferencesT[a][b]);
+				minPref[b][a] = min;
+			}//next b
+		}//next a
+		return minPref;
+	}//end calcMinPrefFromB
+	
 	
 	//Methods used to describe a state to the GUI
 	//A State is expected to be able to describe itself (see State interface)
@@ -50,9 +50,9 @@ public class ManyToOneMatchingState implements State {
 	@Override
 	public State stateClone() {
 		int[] placesCp = new int[places.length];
-		boolean[] isAmatchedCp = new boolean[isAmatched.length];
 		System.arraycopy(places, 0, placesCp, 0, places.length);
-		System.arraycopy(isAmatched, 0, isAmatchedCp, 0, isAmatched.length);
+		//the stochastic-only subclasses of the problem have no isAmatched
+		boolean[] isAmatchedCp = (isAmatched == null) ? null : isAmatched.clone();
 		return new ManyToOneMatchingState(placesCp, isAmatchedCp, numAToMatch, p);
 	}//end stateClone
 	
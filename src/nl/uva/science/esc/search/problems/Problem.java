@@ -39,4 +39,12 @@ public interface Problem {
 	 */
 	public void setState(State s);
 	
+	/**
+	 * Return an independent copy of this problem: it shares the fixed problem
+	 * data, but has a State of its own. Parallel techniques give each of their
+	 * workers such a copy to work on.
+	 * @return the copy
+	 */
+	public Problem problemClone();
+	
 }//end interface
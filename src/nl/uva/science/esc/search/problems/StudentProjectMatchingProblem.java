@@ -1,5 +1,7 @@
 package nl.uva.science.esc.search.problems;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -60,6 +62,10 @@ public class StudentProjectMatchingProblem extends ManyToOneMatchingProblem
 	private int nonPlacementPenalty;     //Preference for not placing the student at all
 	private int[][] ABPreferencesStud;   //Preference of student A for project B
 	private int[][] ABPreferencesProj;	 //Preference of project B for student A
+	
+	//initGoalState methods, in addition to those of the base class
+	public static final String INITDASTUDENTS = "deferredacceptance-students";
+	public static final String INITDAPROJECTS = "deferredacceptance-projects";
 
 	/**
 	 * Constructor does preprocessing to turn the specific problem into
@@ -158,6 +164,244 @@ public class StudentProjectMatchingProblem extends ManyToOneMatchingProblem
 	}//end factory
 	
 	
+	//Stable matching by deferred acceptance (Gale and Shapley).
+	//Both parties stated preferences, so we can look for a matching that is
+	//stable: no student and project prefer eachother over what they got.
+	//Only the pairs that are used in the weighted preference (stated by both,
+	//below both cutoffs) count as acceptable.
+	
+	/* (non-Javadoc)
+	 * @see nl.uva.science.esc.search.problems.ManyToOneMatchingProblem#initGoalState()
+	 * 
+	 * Two more methods: a stable matching found by deferred acceptance, with
+	 * the students or the projects proposing.
+	 */
+	@Override
+	public void initGoalState() throws Exception {
+		String method = getInitGoalStateMethod();
+		if (INITDASTUDENTS.equals(method))
+			setState(deferredAcceptance(true));
+		else if (INITDAPROJECTS.equals(method))
+			setState(deferredAcceptance(false));
+		else
+			super.initGoalState();
+	}//end initGoalState
+	
+	/**
+	 * Find a stable matching by deferred acceptance. Project capacities are
+	 * their numbers of places (BMax).
+	 * Students proposing: each free student proposes to the next project on
+	 * its list; a project holds its best proposals so far in a bounded heap,
+	 * rejecting the worst one when it is full. The result is the stable 
+	 * matching that is best for all students.
+	 * Projects proposing: each project with room proposes to the next student
+	 * on its list; a student holds the best offer so far. The result is the
+	 * stable matching that is best for all projects.
+	 * Either takes O(L log L) time, L the number of acceptable pairs. 
+	 * 
+	 * Students without a stable partner, and mandatory places that stay 
+	 * empty, are then dealt with by completeAssignment, to get a goal state. 
+	 * The result is only guaranteed to be stable if that did nothing.
+	 * @param studentspropose, true: students propose, false: projects propose
+	 * @return the matching, a goal state that is not in use by this problem
+	 * @throws Exception, if no goal state exists
+	 */
+	public ManyToOneMatchingState deferredAcceptance(boolean studentspropose) throws Exception {
+		int numberOfBs = ABPreferencesStud[0].length;
+		int[] capacity = new int[numberOfBs];
+		for (int j=0; j<BPlaces.length; j++) {
+			capacity[BPlaces[j]]++;
+		}//next j
+		int[] assignedB = studentspropose ? 
+				studentsPropose(capacity) : projectsPropose(capacity);
+		completeAssignment(assignedB);
+		int[] filled = placesFromAssignment(assignedB);
+		boolean[] matched = new boolean[numberOfAs];
+		Arrays.fill(matched, true);
+		return new ManyToOneMatchingState(filled, matched, 0, this);
+	}//end deferredAcceptance
+	
+	/**
+	 * Is the student-project pair acceptable to both? (Compare calcABPreferences)
+	 */
+	private boolean isAcceptable(int a, int b) {
+		return ABPreferencesStud[a][b] != 0 && ABPreferencesProj[a][b] != 0 &&
+				ABPreferencesStud[a][b] < studPrefCutoff && 
+				ABPreferencesProj[a][b] < projPrefCutoff;
+	}//end isAcceptable
+	
+	/**
+	 * Make the preference lists of one party: for each member, the acceptable
+	 * members of the other party, most preferred first
+	 * @param forstudents, lists of the students (true) or of the projects
+	 * @return the lists, indexed by student-id or by project-id
+	 */
+	private int[][] preferenceLists(final boolean forstudents) {
+		int numberOfBs = ABPreferencesStud[0].length;
+		int n = forstudents ? numberOfAs : numberOfBs;
+		int m = forstudents ? numberOfBs : numberOfAs;
+		int[][] lists = new int[n][];
+		for (int i=0; i<n; i++) {
+			final int[] prefs = new int[m];
+			int length = 0;
+			Integer[] list = new Integer[m];
+			for (int k=0; k<m; k++) {
+				int a = forstudents ? i : k;
+				int b = forstudents ? k : i;
+				if (isAcceptable(a, b)) {
+					prefs[k] = forstudents ? ABPreferencesStud[a][b] : ABPreferencesProj[a][b];
+					list[length++] = k;
+				}
+			}//next k
+			Arrays.sort(list, 0, length, new Comparator<Integer>() {
+				public int compare(Integer k1, Integer k2) {
+					return prefs[k1] - prefs[k2];
+				}
+			}); //stable, so ties are broken by id
+			lists[i] = new int[length];
+			for (int k=0; k<length; k++) {
+				lists[i][k] = list[k];
+			}//next k
+		}//next i
+		return lists;
+	}//end preferenceLists
+	
+	/**
+	 * Deferred acceptance with the students proposing
+	 * @param capacity, for each project the number of students it can take
+	 * @return for each student its project, or -1
+	 */
+	private int[] studentsPropose(int[] capacity) {
+		int numberOfBs = capacity.length;
+		int[][] lists = preferenceLists(true);
+		int[] next = new int[numberOfAs];  //next project on the list, per student
+		//per project: bounded max-heap of held students, by project preference
+		int[][] held = new int[numberOfBs][];
+		int[] size = new int[numberOfBs];
+		for (int b=0; b<numberOfBs; b++) {
+			held[b] = new int[capacity[b]];
+		}//next b
+		int[] free = new int[numberOfAs];  //stack of students that may propose
+		int nfree = 0;
+		for (int a=numberOfAs-1; a>=0; a--) {
+			free[nfree++] = a;
+		}//next a
+		while (nfree > 0) {
+			int a = free[--nfree];
+			if (next[a] == lists[a].length)
+				continue; //rejected everywhere: stays unmatched
+			int b = lists[a][next[a]++];
+			int[] h = held[b];
+			if (size[b] < h.length) {
+				heapInsert(h, size[b]++, a, b);
+			}
+			else if (h.length > 0 && isWorseForProject(h[0], a, b)) {
+				int rejected = h[0];
+				heapReplaceTop(h, size[b], a, b);
+				free[nfree++] = rejected;
+			}
+			else {
+				free[nfree++] = a; //rejected: on to the next project
+			}//end if
+		}//end while
+		int[] assignedB = new int[numberOfAs];
+		Arrays.fill(assignedB, -1);
+		for (int b=0; b<numberOfBs; b++) {
+			for (int i=0; i<size[b]; i++) {
+				assignedB[held[b][i]] = b;
+			}//next i
+		}//next b
+		return assignedB;
+	}//end studentsPropose
+	
+	/**
+	 * Does project b prefer student a2 over student a1? Ties: lower id wins.
+	 */
+	private boolean isWorseForProject(int a1, int a2, int b) {
+		int p1 = ABPreferencesProj[a1][b];
+		int p2 = ABPreferencesProj[a2][b];
+		return p1 > p2 || (p1 == p2 && a1 > a2);
+	}//end isWorseForProject
+	
+	/**
+	 * Add student a to the max-heap h of project b (worst student on top)
+	 */
+	private void heapInsert(int[] h, int size, int a, int b) {
+		int i = size;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!isWorseForProject(a, h[parent], b))
+				break;
+			h[i] = h[parent];
+			i = parent;
+		}//end while
+		h[i] = a;
+	}//end heapInsert
+	
+	/**
+	 * Replace the top (worst student) of the max-heap h of project b by a
+	 */
+	private void heapReplaceTop(int[] h, int size, int a, int b) {
+		int i = 0;
+		int child;
+		while ((child = 2 * i + 1) < size) {
+			if (child + 1 < size && isWorseForProject(h[child+1], h[child], b))
+				child++;
+			if (!isWorseForProject(h[child], a, b))
+				break;
+			h[i] = h[child];
+			i = child;
+		}//end while
+		h[i] = a;
+	}//end heapReplaceTop
+	
+	/**
+	 * Deferred acceptance with the projects proposing
+	 * @param capacity, for each project the number of students it can take
+	 * @return for each student its project, or -1
+	 */
+	private int[] projectsPropose(int[] capacity) {
+		int numberOfBs = capacity.length;
+		int[][] lists = preferenceLists(false);
+		int[] next = new int[numberOfBs];  //next student on the list, per project
+		int[] count = new int[numberOfBs]; //number of students held, per project
+		int[] assignedB = new int[numberOfAs];
+		Arrays.fill(assignedB, -1);
+		int[] active = new int[numberOfBs];  //stack of projects that may propose
+		boolean[] isactive = new boolean[numberOfBs];
+		int nactive = 0;
+		for (int b=numberOfBs-1; b>=0; b--) {
+			active[nactive++] = b;
+			isactive[b] = true;
+		}//next b
+		while (nactive > 0) {
+			int b = active[nactive-1];
+			if (count[b] == capacity[b] || next[b] == lists[b].length) {
+				//full, or nobody left to ask
+				nactive--;
+				isactive[b] = false;
+				continue;
+			}//end if
+			int a = lists[b][next[b]++];
+			int b0 = assignedB[a];
+			if (b0 == -1 || ABPreferencesStud[a][b] < ABPreferencesStud[a][b0] ||
+					(ABPreferencesStud[a][b] == ABPreferencesStud[a][b0] && b < b0)) {
+				//the student accepts, and drops its previous project if any
+				assignedB[a] = b;
+				count[b]++;
+				if (b0 != -1) {
+					count[b0]--;
+					if (!isactive[b0]) {
+						active[nactive++] = b0;
+						isactive[b0] = true;
+					}
+				}//end if
+			}//end if
+		}//end while
+		return assignedB;
+	}//end projectsPropose
+	
+	
 	
 	//After constructing the object, the base class does all the work.
 	//We will however override the methods for reporting a solution.
@@ -1,5 +1,10 @@
 package nl.uva.science.esc.search.problems;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -321,6 +326,41 @@ public class StudentProjectMatchingProblemConnector extends ProblemConnector {
 	}
 	
 	
+	/**
+	 * Read a solution written earlier by writeSolutionToFile, for use as a 
+	 * warm start after the problem data changed a little. The problem must 
+	 * be read first: the db-ids in the solution are translated using the 
+	 * current translation arrays. Students that are no longer in the problem
+	 * are skipped, and students that are new, were not placed (bogus project)
+	 * or are placed in a project that no longer exists get no project.
+	 * @param pathname, path of the solution file
+	 * @return for each student (consecutive id): its project or -1
+	 * @throws InvalidProblemException, if the file can not be read
+	 */
+	public int[] getPriorAssignmentFromFile(String pathname) throws InvalidProblemException {
+		JSONObject json = null;
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(new File(pathname)) ));
+			json = new JSONObject(new JSONTokener(in));
+		} catch (FileNotFoundException e) {
+			throw new InvalidProblemException("Prior solution not found: "+pathname);
+		}
+		Map<String, Integer> projNr = new HashMap<String, Integer>(); //reverse of ProjId[]
+		for (int j=0; j<ProjId.length; j++) {
+			if (!BOGUSPROJECTID.equals(ProjId[j]))
+				projNr.put(ProjId[j], Integer.valueOf(j));
+		}//next j
+		int[] assignedB = new int[numberOfAs];
+		for (int i=0; i<numberOfAs; i++) {
+			String projid = json.optString(StudId[i], null);
+			Integer j = (projid == null) ? null : projNr.get(projid);
+			assignedB[i] = (j == null) ? -1 : j.intValue();
+		}//next i
+		return assignedB;
+	}//end getPriorAssignmentFromFile
+	
+	
 	//setters for the solution before we can start writing...!
 	
 	public void setABMatches(String[][] BAMatches) {
@@ -0,0 +1,214 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * The A-star search technique: best-first search where the node to expand
+ * next is the one with the lowest cost plus estimated remaining cost.
+ * If the estimate (heuristic) of the problem is admissible, the first goal
+ * state taken from the open list is an optimal one.
+ * See Russell and Norvig for more.
+ *
+ * Generated nodes are not kept as State clones: the SearchNodeArena keeps
+ * only a parent pointer and a Move per node. The open list is a NodeHeap of
+ * node indices. To expand a node, the problem walks from the previously
+ * expanded node to it: retreat up to their common ancestor, then replay
+ * the Moves down to the node.
+ *
+ * A closed set of state hashes prevents expanding a node when an equivalent
+ * node (same remaining subtree) was expanded before. With a consistent
+ * heuristic the node expanded first was the cheapest one.
+ * @author kaper
+ *
+ */
+public class AStarTechnique implements Technique {
+
+	private SearchNodeArena arena; //all generated nodes
+	private NodeHeap open;        //open list: nodes to expand, by cost + estimate
+	private LongHashSet closed;   //hashes of the expanded nodes
+	private int levels;           //number of levels to develop in the search tree
+	private int here;             //node the problem is currently in
+	private int[] path;           //scratch array for walking the tree
+	private int nodecount;        //how many nodes were generated
+	private int expandedcount;    //how many nodes were expanded
+	private long bestcost;        //cost of the goal state found
+	private static final long UNKNOWNCOST = 99999;
+	private State beststate;      //the goal state found
+	private HeuristicSearchProblem p; //the problem to solve !
+	private boolean running;      //we can stop the process by setting this to no
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 */
+	public AStarTechnique(HeuristicSearchProblem p, int levels) {
+		this.p = p;
+		this.levels = levels;
+		this.arena = new SearchNodeArena(1024);
+		this.open = new NodeHeap(1024);
+		this.closed = new LongHashSet(1024);
+		this.path = new int[levels + 1];
+		this.nodecount = 0;
+		this.expandedcount = 0;
+		this.bestcost = UNKNOWNCOST;
+		this.beststate = null;
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		p.initState(); //different from stochastic which needs a GOAL state for starters!
+		here = arena.add(SearchNodeArena.NOPARENT, null, 0, 0);
+		open.push(here, p.getHeuristicCost(0), 0);
+		while (running && !open.isEmpty()) {
+			int n = open.pop();  //node with the lowest cost + estimate
+			moveTo(n);
+			int level = arena.getLevel(n);
+			long cost = arena.getCost(n);
+			if (p.goalTest(level)) {
+				//the first goal state taken from the open list is the best
+				beststate = p.getState().stateClone();
+				bestcost = cost;
+				break;
+			}//end if
+			if (level >= levels || !closed.add(p.getStateHash(level)))
+				continue; //not to be expanded, or an equivalent node was
+			expandedcount++;
+			//Expand the node, and put the resulting nodes in the open list
+			boolean ok = p.generateDeterministicMove(level);
+			while (ok) {   //while the node is not out of Moves
+				long newcost = cost + p.getDeltaCostDeterministicMove();
+				Move m = p.doForwardMove();
+				long estimate = p.getHeuristicCost(level + 1);
+				int newnode = arena.add(n, m, newcost, level + 1);
+				open.push(newnode, newcost + estimate, level + 1);
+				nodecount++;
+				p.retreatMove(m);  //back to node n, to try its next move
+				ok = p.generateDeterministicMove(level);
+			}//end while
+			//for debugging, comment out in production
+			if (expandedcount % 1000 ==0) {
+				System.out.println("nodes generated: "+nodecount);
+				System.out.println("nodes expanded: "+expandedcount);
+				System.out.println("open list: "+open.size());
+				System.out.println("lowest estimate: "+(open.isEmpty() ? 0 : open.peekKey()));
+				System.out.println();
+			}//end if
+		}//end while
+		running = false;
+	}//end run
+
+	/**
+	 * Bring the problem from node "here" to node n, by retreating up to
+	 * the common ancestor, and replaying the Moves from there down to n
+	 * @param n, the node to go to
+	 */
+	private void moveTo(int n) {
+		int a = here;
+		int b = n;
+		int pathlength = 0;
+		while (arena.getLevel(a) > arena.getLevel(b)) {
+			p.retreatMove(arena.getMove(a));
+			a = arena.getParent(a);
+		}//end while
+		while (arena.getLevel(b) > arena.getLevel(a)) {
+			path[pathlength++] = b;
+			b = arena.getParent(b);
+		}//end while
+		while (a != b) {
+			p.retreatMove(arena.getMove(a));
+			a = arena.getParent(a);
+			path[pathlength++] = b;
+			b = arena.getParent(b);
+		}//end while
+		for (int i=pathlength-1; i>=0; i--) {
+			p.replayMove(arena.getMove(path[i]));
+		}//next i
+		here = n;
+	}//end moveTo
+
+	public int getNodeCount() {
+		return nodecount;
+	}//end getNodeCount
+
+	public int getExpandedCount() {
+		return expandedcount;
+	}//end getExpandedCount
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public State getCurrentState() {
+		return p.getState(); //take care to only read it
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best goal state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		String txt = "";
+		txt += "bestcost: "+bestcost+"\n";
+		if (beststate == null)
+			return txt + "no goal state found, stopped early or too few levels\n";
+		p.setState(beststate); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {"nodecount", "expandedcount", "opensize", "bestcost"};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(nodecount),
+			String.valueOf(expandedcount),
+			String.valueOf(open.size()),
+			String.valueOf(bestcost)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
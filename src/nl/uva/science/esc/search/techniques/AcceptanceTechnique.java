@@ -0,0 +1,197 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.problems.StochasticOptimisationProblem;
+
+/**
+ * Common part of the techniques that walk from state to state by random
+ * moves, and decide for each move whether to accept it by comparing its
+ * change in energy to a control value that falls during the run: the
+ * temperature of simulated annealing, the threshold of threshold accepting,
+ * the water level of the great deluge.
+ *
+ * This class has the iteration loop, the stopping rule and the monitoring
+ * properties, so the techniques can be compared side by side. The run
+ * stops when the subclass says the control value is close to zero (or
+ * below the energy) and at least maxtriesinvain iterations have passed
+ * since the lowest energy was seen.
+ * @author kaper
+ */
+public abstract class AcceptanceTechnique implements Technique {
+
+	protected long energy;     //The cost function is by tradition called energy
+		//when using this technique. It is the function to minimize.
+		//This is the energy of the current state.
+	protected int iteration;   //counter of tries
+	protected long bestenergy; //lowest energy seen in this run up to now
+	protected int bestiteration; //iteration in which best energy was seen
+	protected int maxtriesinvain;//max of attempts after best iteration
+	protected StochasticOptimisationProblem p;   //the problem to solve !
+	protected boolean running; //we can stop the process by setting this to no
+
+	/**
+	 * Constructor, puts the problem in its initial goal state
+	 * @param p, problem to solve
+	 * @param maxtriesinvain, stop after how many unsuccesful tries
+	 * @throws Exception
+	 */
+	protected AcceptanceTechnique(
+		StochasticOptimisationProblem p, int maxtriesinvain
+	) throws Exception {
+		this.p = p;
+		this.p.initGoalState();
+		iteration = 0;
+		bestiteration = 0;
+		energy = this.p.getCost();
+		bestenergy = energy;
+		this.maxtriesinvain = maxtriesinvain;
+		running = false;
+	}//end constructor
+
+	/**
+	 * Run the technique on the problem
+	 * This could best be run in a separate thread, as it involves lengthy
+	 * work.
+	 */
+	public void run() {
+		running = true;
+		while (
+			running &&
+			(!isFrozen() || iteration < bestiteration + maxtriesinvain)
+		) {
+			//get a proposal for a state change
+			p.generateRandomMove();
+			long energychange = p.getDeltaCostRandomMove();
+			//decide whether it will happen
+			if (accept(energychange)) {
+				p.acceptMove();
+				energy += energychange;
+				if (energy < bestenergy) {
+					bestenergy = energy;
+					bestiteration = iteration;
+				}//end if
+			}//end if
+			//for debugging, comment out in production
+			if (iteration % 50000 ==0) {
+				System.out.println("energy: "+energy);
+				System.out.println("iteration: "+iteration);
+				System.out.println("bestenergy: "+bestenergy);
+				System.out.println("bestiteration: "+bestiteration);
+				System.out.println(getControlName()+": "+getControl());
+				System.out.println();
+			}//end if
+			iteration++;
+			lowerControl();
+		}//end while
+		running = false;
+	}//end run
+
+	/**
+	 * Decide whether a move is accepted
+	 * @param energychange, the change in energy the move would cause
+	 * @return accept it?
+	 */
+	protected abstract boolean accept(long energychange);
+
+	/**
+	 * Called after each iteration, to lower the control value on schedule
+	 */
+	protected abstract void lowerControl();
+
+	/**
+	 * @return has the control value come so low that no more than small
+	 *    improvements are to be expected?
+	 */
+	protected abstract boolean isFrozen();
+
+	/**
+	 * @return name of the control value, as shown in the UI
+	 */
+	protected abstract String getControlName();
+
+	/**
+	 * @return the control value
+	 */
+	protected abstract double getControl();
+
+	//Below are functions for interacting with the running process
+	//They could be called by the user interface
+	//There is no threadsafety, so just reading is the safest!
+
+	public long getEnergy() {
+		return energy;
+	}//end getEnergy
+
+	public int getIteration() {
+		return iteration;
+	}//end getIteration
+
+	public long getBestenergy() {
+		return bestenergy;
+	}//end getBestenergy
+
+	public int getBestiteration() {
+		return bestiteration;
+	}//end getBestiteration
+
+	public State getCurrentState() {
+		return p.getState();
+	}//end getCurrentState
+
+	/**
+	 * In these Techniques, the best state is not stored, but the current state
+	 * should be a good approximation... so ask for that one instead!
+	 */
+	public State getBestState() {
+		return null;
+	}//end getBestState
+
+	/**
+	 * This returns a reference to the live problem object
+	 * Reading (calling getters) is okay but other actions may messup the work
+	 * @return problem object
+	 */
+	public StochasticOptimisationProblem getProblem() {
+		return this.p;
+	}//end getProblem
+
+	/**
+	 * The only interference which is deemed safe
+	 */
+	public void stopRunning() {
+		this.running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"energy", "iteration", "bestenergy", "bestiteration", getControlName()
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(energy),
+			String.valueOf(iteration),
+			String.valueOf(bestenergy),
+			String.valueOf(bestiteration),
+			String.valueOf(getControl())
+		};
+	}//end simplePropertyValues
+
+}//end class
@@ -0,0 +1,207 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Random;
+
+/**
+ * Adaptive operator selection, for techniques that have several kinds of
+ * moves or destroy heuristics to choose from. Which one pays off differs
+ * per instance, and changes during a run, so the technique asks the
+ * selector which operator to use next, and tells it afterwards what that
+ * gave: the improvement (the lowering of the cost, 0 if none) and the
+ * time it took.
+ *
+ * The reward of an operator is its improvement per millisecond over the
+ * last window uses of all operators together, so old results are
+ * forgotten, also those of operators that are not chosen any more. The
+ * choice is the sliding-window UCB bandit policy (Garivier and Moulines):
+ * the operator with the highest reward, relative to the best reward, plus
+ * a bonus of explore * sqrt(2 ln(min(t, window)) / n), t being the number
+ * of uses up to now and n the number of uses of the operator in the
+ * window. An operator without uses in the window gets chosen first, so an
+ * operator that lost out is tried again at least once per window, and
+ * taken up again if it pays off by then.
+ *
+ * A technique that needs several operators at once, before any reward
+ * comes in, can ask for them in one go: they are then drawn without
+ * replacement, in order of score.
+ *
+ * The selector is not tied to a problem, and its methods are synchronized,
+ * so it may be shared by the threads of a technique. Its simple properties
+ * can be added to those of the technique, for the property monitor.
+ * @author kaper
+ *
+ */
+public class AdaptiveOperatorSelector {
+
+	private String[] names;    //names of the operators
+	private int window;        //number of last uses, of all operators, that count
+	private double explore;    //weight of the bonus for less used operators
+	private int[] operators;   //the window as a ring: operator of each use
+	private long[] improvements; //its improvement
+	private long[] times;      //and its nanoseconds
+	private int next;          //next position in the ring
+	private long t;            //number of uses up to now
+	private int[] count;       //for each operator: number of uses in the window
+	private long[] sumimprovement; //sums over its uses in the window
+	private long[] sumtime;
+	private long[] uses;       //for each operator: number of uses in the whole run
+	private double[] score;    //scratch: the score of each operator
+	private int[] ranking;     //scratch: the operators by score
+
+	/**
+	 * Constructor
+	 * @param names, names of the operators, the index is the operator number
+	 * @param window, number of last uses, of all operators together, that
+	 *    count; a few times the number of operators at least
+	 * @param explore, weight of the bonus for less used operators, e.g. 0.5;
+	 *    0 always takes the best one
+	 */
+	public AdaptiveOperatorSelector(String[] names, int window, double explore) {
+		this.names = names;
+		this.window = Math.max(1, window);
+		this.explore = explore;
+		this.operators = new int[this.window];
+		this.improvements = new long[this.window];
+		this.times = new long[this.window];
+		this.next = 0;
+		this.t = 0;
+		int k = names.length;
+		this.count = new int[k];
+		this.sumimprovement = new long[k];
+		this.sumtime = new long[k];
+		this.uses = new long[k];
+		this.score = new double[k];
+		this.ranking = new int[k];
+	}//end constructor
+
+	/**
+	 * Choose the operator to use next
+	 * @param random, the source of randomness, for breaking ties
+	 * @return the operator number
+	 */
+	public synchronized int select(Random random) {
+		rank(random);
+		return ranking[0];
+	}//end select
+
+	/**
+	 * Choose several operators to use at once, without replacement in
+	 * order of score; if more are asked for than there are, the order
+	 * starts again
+	 * @param random, the source of randomness, for breaking ties
+	 * @param chosen, to write the operator numbers in
+	 * @param number, number of operators to choose
+	 */
+	public synchronized void select(Random random, int[] chosen, int number) {
+		rank(random);
+		for (int i=0; i<number; i++) {
+			chosen[i] = ranking[i % ranking.length];
+		}//next i
+	}//end select
+
+	/**
+	 * Order the operators by score, highest first, ties at random; those
+	 * without uses in the window come first
+	 */
+	private void rank(Random random) {
+		double bestreward = 0;
+		for (int k=0; k<names.length; k++) {
+			bestreward = Math.max(bestreward, reward(k));
+		}//next k
+		double logt = Math.log(Math.max(1, Math.min(t, window)));
+		for (int k=0; k<names.length; k++) {
+			if (count[k] == 0) {
+				score[k] = Double.POSITIVE_INFINITY;  //not tried lately
+				continue;
+			}
+			score[k] = (bestreward > 0) ? reward(k) / bestreward : 0;
+			score[k] += explore * Math.sqrt(2 * logt / count[k]);
+		}//next k
+		//insertion sort of a random permutation, so ties are in random order
+		for (int i=0; i<names.length; i++) {
+			int j = random.nextInt(i + 1);
+			ranking[i] = ranking[j];
+			ranking[j] = i;
+		}//next i
+		for (int i=1; i<names.length; i++) {
+			int k = ranking[i];
+			int j = i - 1;
+			while (j >= 0 && score[ranking[j]] < score[k]) {
+				ranking[j + 1] = ranking[j];
+				j--;
+			}//end while
+			ranking[j + 1] = k;
+		}//next i
+	}//end rank
+
+	/**
+	 * Tell what a use of an operator gave
+	 * @param operator, the operator number
+	 * @param improvement, the lowering of the cost, 0 or negative if none
+	 * @param nanos, the time the use took, in nanoseconds
+	 */
+	public synchronized void reward(int operator, long improvement, long nanos) {
+		if (t >= window) {
+			//the oldest use leaves the window
+			int old = operators[next];
+			count[old]--;
+			sumimprovement[old] -= improvements[next];
+			sumtime[old] -= times[next];
+		}
+		operators[next] = operator;
+		improvements[next] = Math.max(0, improvement);
+		times[next] = Math.max(1, nanos);
+		count[operator]++;
+		sumimprovement[operator] += improvements[next];
+		sumtime[operator] += times[next];
+		next = (next + 1 == window) ? 0 : next + 1;
+		t++;
+		uses[operator]++;
+	}//end reward
+
+	/**
+	 * @return the improvement per millisecond of an operator over its uses
+	 *    in the window
+	 */
+	private double reward(int operator) {
+		if (sumtime[operator] == 0)
+			return 0;
+		return sumimprovement[operator] * 1e6 / sumtime[operator];
+	}//end reward
+
+	/**
+	 * @return the name of an operator
+	 */
+	public String getName(int operator) {
+		return names[operator];
+	}//end getName
+
+	/**
+	 * Advertise simple properties meant for display in the UI: per operator
+	 * its number of uses and its reward
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		String[] properties = new String[2 * names.length];
+		for (int k=0; k<names.length; k++) {
+			properties[2 * k] = names[k] + " uses";
+			properties[2 * k + 1] = names[k] + " reward";
+		}//next k
+		return properties;
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public synchronized String[] simplePropertyValues() {
+		String[] values = new String[2 * names.length];
+		for (int k=0; k<names.length; k++) {
+			values[2 * k] = String.valueOf(uses[k]);
+			values[2 * k + 1] = String.valueOf(reward(k));
+		}//next k
+		return values;
+	}//end simplePropertyValues
+
+}//end class
@@ -0,0 +1,399 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Ant colony optimization for the many to one matching problems, in the
+ * MAX-MIN ant system form (Stuetzle and Hoos). Each iteration every ant
+ * builds an assignment: it takes the A's in a random order of its own, and
+ * gives each A a B with probability proportional to pheromone times
+ * heuristic, the heuristic being (1 / preference) ^ beta. Only B's with
+ * room are candidates, and when the A's left are just enough to fill the
+ * mandatory places left, only B's below their minimum. So each ant builds
+ * a goal state.
+ *
+ * The best ant of the iteration, optionally polished by the
+ * LocalOptimumPolisher first, lays pheromone on its A-B edges: 1 / its
+ * cost. Pheromone stays between a minimum and a maximum that follows from
+ * the best cost up to now, so no edge is ever ruled out or certain.
+ *
+ * The pheromone matrix is one float array, indexed a * numberOfBs + b.
+ * Evaporation is kept in a common factor, so that an iteration only
+ * touches the edges of the depositing ant, not the whole matrix; the
+ * matrix is rescaled only when the factor gets too small. The ants build
+ * on all cores; each has its own random generator and arrays, and the
+ * pheromone is only read while they build.
+ * @author kaper
+ *
+ */
+public class AntColonyTechnique implements Technique {
+
+	private int ants;          //number of ants per iteration
+	private int iterations;    //number of iterations to do
+	private float evaporation; //fraction of the pheromone that evaporates per iteration
+	private float beta;        //weight of the heuristic against the pheromone
+	private boolean polish;    //polish the best ant of each iteration?
+	private int maxiterationsinvain; //stop after this many iterations without improvement
+	private int threads;       //number of worker threads
+	private int iteration;     //iteration being done
+	private long iterationcost; //cost of the best ant of the iteration
+	private double averagecost; //average cost of the ants of the iteration
+	private long bestcost;     //cost of the best state up to now
+	private int bestiteration; //iteration in which it was found
+	private State beststate;   //the best state
+	private int numberOfAs;
+	private int numberOfBs;
+	private int[] bmin;        //for each B: minimum number of A's
+	private int[] bmax;        //for each B: maximum number of A's
+	private int totalmin;      //sum of the minimums
+	private float[] heuristic; //for each edge a * numberOfBs + b: (1 / preference) ^ beta
+	private float[] pheromone; //for each edge: pheromone divided by scale
+	private double scale;      //common factor of the pheromone: evaporation so far
+	private double taumax;     //bounds of the pheromone
+	private double taumin;
+	private ManyToOneMatchingProblem p;   //the problem to solve !
+	private volatile boolean running;   //we can stop the process by setting this to no
+	private static final double MINSCALE = 1e-20;  //rescale the matrix below this
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param ants, number of ants per iteration
+	 * @param iterations, number of iterations to do
+	 * @param evaporation, fraction of the pheromone that evaporates per
+	 *    iteration, e.g. 0.1
+	 * @param beta, weight of the heuristic, e.g. 2; 0 ignores the preferences
+	 * @param polish, polish the best ant of each iteration to a local optimum?
+	 * @param maxiterationsinvain, stop after this many iterations without improvement
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 */
+	public AntColonyTechnique(
+		ManyToOneMatchingProblem p, int ants, int iterations, float evaporation,
+		float beta, boolean polish, int maxiterationsinvain, int threads
+	) {
+		this.p = p;
+		this.ants = Math.max(1, ants);
+		this.iterations = iterations;
+		this.evaporation = evaporation;
+		this.beta = beta;
+		this.polish = polish;
+		this.maxiterationsinvain = maxiterationsinvain;
+		this.threads = Math.max(1, threads);
+		this.numberOfAs = p.getNumberOfAs();
+		this.numberOfBs = p.getNumberOfBs();
+		this.bmin = new int[numberOfBs];
+		this.bmax = new int[numberOfBs];
+		this.totalmin = 0;
+		for (int b=0; b<numberOfBs; b++) {
+			bmin[b] = p.getNumberOfMandatoryPlacesOfB(b);
+			bmax[b] = p.getFirstPlaceOfB(b+1) - p.getFirstPlaceOfB(b);
+			totalmin += bmin[b];
+		}//next b
+		this.heuristic = new float[numberOfAs * numberOfBs];
+		for (int a=0; a<numberOfAs; a++) {
+			for (int b=0; b<numberOfBs; b++) {
+				double eta = 1.0 / Math.max(1, p.getPreference(a, b));
+				heuristic[a * numberOfBs + b] = (float) Math.pow(eta, beta);
+			}//next b
+		}//next a
+		this.pheromone = new float[numberOfAs * numberOfBs];
+		this.iteration = 0;
+		this.bestiteration = 0;
+		this.beststate = null;
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		//the initial goal state is the first best one, and sets the bounds
+		try {
+			p.initGoalState();
+		} catch (Exception e) {
+			e.printStackTrace(); //no goal state exists
+			running = false;
+			return;
+		}
+		bestcost = p.getCost();
+		beststate = p.getState().stateClone();
+		setBounds();
+		Arrays.fill(pheromone, (float) taumax);
+		scale = 1;
+		Random seeds = new Random();
+		List<Ant> colony = new ArrayList<Ant>(ants);
+		for (int k=0; k<ants; k++) {
+			colony.add(new Ant(seeds.nextLong()));
+		}//next k
+		int[] polished = new int[numberOfAs];
+		LocalOptimumPolisher polisher = new LocalOptimumPolisher(p, true, threads);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (iteration=1; iteration<=iterations && running
+					&& iteration <= bestiteration + maxiterationsinvain; iteration++) {
+				for (Ant ant : colony) {
+					ant.reinitialize();
+				}//next ant
+				pool.invoke(new ColonyTask(colony));
+				//the best ant of the iteration
+				Ant best = colony.get(0);
+				long sum = 0;
+				for (Ant ant : colony) {
+					sum += ant.cost;
+					if (ant.cost < best.cost)
+						best = ant;
+				}//next ant
+				averagecost = (double) sum / ants;
+				int[] assignment = best.assignment;
+				iterationcost = best.cost;
+				if (polish) {
+					p.setAssignment(assignment);
+					polisher.polish();
+					iterationcost = polisher.getCost();
+					for (int j=0; j<p.getNumberOfPlaces(); j++) {
+						if (p.getAInPlace(j) != -1)
+							polished[p.getAInPlace(j)] = p.getBOfPlace(j);
+					}//next j
+					assignment = polished;
+				}//end if
+				if (iterationcost < bestcost) {
+					bestcost = iterationcost;
+					bestiteration = iteration;
+					if (!polish)
+						p.setAssignment(assignment);
+					beststate = p.getState().stateClone();
+					setBounds();
+				}//end if
+				evaporateAndDeposit(assignment, iterationcost);
+				//for debugging, comment out in production
+				if (iteration % 10 == 0) {
+					System.out.println("iteration: "+iteration);
+					System.out.println("averagecost: "+averagecost);
+					System.out.println("bestcost: "+bestcost);
+					System.out.println("bestiteration: "+bestiteration);
+					System.out.println();
+				}//end if
+			}//next iteration
+			iteration--; //the last one that was done
+		} finally {
+			pool.shutdown();
+		}
+		p.setState(beststate.stateClone()); //leave the problem in the best state
+		running = false;
+	}//end run
+
+	/**
+	 * The pheromone bounds of the MAX-MIN ant system for the best cost
+	 */
+	private void setBounds() {
+		taumax = 1.0 / (evaporation * Math.max(1, bestcost));
+		taumin = taumax / (2 * numberOfBs);
+	}//end setBounds
+
+	/**
+	 * @return the pheromone on an edge, within the bounds
+	 */
+	private double tau(int edge) {
+		double t = pheromone[edge] * scale;
+		return (t < taumin) ? taumin : (t > taumax) ? taumax : t;
+	}//end tau
+
+	/**
+	 * Evaporate all pheromone, by the common factor, and lay pheromone on
+	 * the edges of an assignment
+	 * @param assignment, for each A: its B
+	 * @param cost, its cost
+	 */
+	private void evaporateAndDeposit(int[] assignment, long cost) {
+		scale *= 1 - evaporation;
+		if (scale < MINSCALE) {
+			for (int e=0; e<pheromone.length; e++) {
+				pheromone[e] = (float) tau(e);
+			}//next e
+			scale = 1;
+		}//end if
+		double amount = 1.0 / Math.max(1, cost);
+		for (int a=0; a<numberOfAs; a++) {
+			int e = a * numberOfBs + assignment[a];
+			pheromone[e] = (float) (Math.min(taumax, tau(e) + amount) / scale);
+		}//next a
+	}//end evaporateAndDeposit
+
+	/**
+	 * Runs all ants of one iteration
+	 */
+	private static class ColonyTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Ant> colony;
+
+		ColonyTask(List<Ant> colony) {
+			this.colony = colony;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			invokeAll(colony);
+		}//end compute
+	}//end class ColonyTask
+
+	/**
+	 * An ant builds an assignment; it only reads the pheromone, and has its
+	 * own random generator and arrays, kept from one iteration to the next
+	 */
+	private class Ant extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Random random;
+		private int[] order = new int[numberOfAs];   //the A's in the order to assign them
+		private int[] count = new int[numberOfBs];   //A's assigned to each B
+		private double[] weight = new double[numberOfBs]; //of each B for the current A
+		int[] assignment = new int[numberOfAs];      //for each A: its B
+		long cost;                                   //the cost of the assignment
+
+		Ant(long seed) {
+			this.random = new Random(seed);
+			for (int a=0; a<numberOfAs; a++) {
+				order[a] = a;
+			}//next a
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			//a random order of the A's
+			for (int i=numberOfAs-1; i>0; i--) {
+				int j = random.nextInt(i + 1);
+				int temp = order[i];
+				order[i] = order[j];
+				order[j] = temp;
+			}//next i
+			Arrays.fill(count, 0);
+			int need = totalmin;  //mandatory places still to fill
+			cost = 0;
+			for (int i=0; i<numberOfAs; i++) {
+				int a = order[i];
+				boolean forced = (numberOfAs - i <= need); //only B's below their minimum
+				double total = 0;
+				int last = -1;
+				for (int b=0; b<numberOfBs; b++) {
+					weight[b] = 0;
+					if (count[b] < bmax[b] && (!forced || count[b] < bmin[b])) {
+						int e = a * numberOfBs + b;
+						weight[b] = tau(e) * heuristic[e];
+						total += weight[b];
+						last = b;
+					}
+				}//next b
+				//roulette wheel
+				double r = random.nextDouble() * total;
+				int chosen = last;
+				for (int b=0; b<numberOfBs; b++) {
+					r -= weight[b];
+					if (weight[b] > 0 && r < 0) {
+						chosen = b;
+						break;
+					}
+				}//next b
+				if (count[chosen] < bmin[chosen])
+					need--;
+				count[chosen]++;
+				assignment[a] = chosen;
+				cost += p.getPreference(a, chosen);
+			}//next i
+		}//end compute
+	}//end class Ant
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+
+	public int getIteration() {
+		return iteration;
+	}//end getIteration
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public int getBestIteration() {
+		return bestiteration;
+	}//end getBestIteration
+
+	public double getAverageCost() {
+		return averagecost;
+	}//end getAverageCost
+
+	/**
+	 * The ants each build a different state, there is no single current
+	 * state. We show the best one instead.
+	 */
+	public State getCurrentState() {
+		return beststate;
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"iteration", "averagecost", "iterationcost", "bestcost", "bestiteration"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(iteration),
+			String.valueOf(averagecost),
+			String.valueOf(iterationcost),
+			String.valueOf(bestcost),
+			String.valueOf(bestiteration)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("ants", true, InputType.POSITIVEINT),
+				new Parameter("iterations", true, InputType.POSITIVEINT),
+				new Parameter("evaporation", true, InputType.FRACTION),
+				new Parameter("beta", true, InputType.FLOAT),
+				new Parameter("polish", false, InputType.INT),  //1 to polish, 0 not
+				new Parameter("maxiterationsinvain", true, InputType.POSITIVEINT),
+				new Parameter("threads", false, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
@@ -0,0 +1,94 @@
+package nl.uva.science.esc.search.techniques;
+
+/**
+ * Bounded selection of the W best (lowest key) candidates, for beam search.
+ * The candidates themselves are not stored here: the heap hands out slot
+ * numbers 0..W-1, and the caller keeps the candidate data in a slot-indexed
+ * array of its own. When all slots are taken, a new candidate only gets a
+ * slot if its key is lower than the highest key in the heap; it then takes
+ * over the slot of that worst candidate.
+ *
+ * It is a binary max-heap in primitive arrays, so offering does not create
+ * objects, and it can be cleared and reused for every level.
+ * @author kaper
+ *
+ */
+public class BeamHeap {
+	private int[] slots;    //slot numbers, in heap order (worst on top)
+	private long[] keys;    //key of each slot, same positions
+	private int size;       //number of slots taken
+
+	/**
+	 * Constructor
+	 * @param width, the number of candidates to keep
+	 */
+	public BeamHeap(int width) {
+		slots = new int[width];
+		keys = new long[width];
+		size = 0;
+	}//end constructor
+
+	/**
+	 * Offer a candidate
+	 * @param key, the lower the better
+	 * @return the slot to store the candidate in, or -1 if it is rejected
+	 */
+	public int offer(long key) {
+		if (size < slots.length) {
+			//a free slot: sift up from the new leaf
+			int slot = size;
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (keys[parent] >= key)
+					break;
+				slots[i] = slots[parent];
+				keys[i] = keys[parent];
+				i = parent;
+			}//end while
+			slots[i] = slot;
+			keys[i] = key;
+			return slot;
+		}//end if
+		if (size == 0 || key >= keys[0])
+			return -1; //not better than the worst one we keep
+		//replace the worst candidate: sift down from the root
+		int slot = slots[0];
+		int i = 0;
+		int child;
+		while ((child = 2 * i + 1) < size) {
+			if (child + 1 < size && keys[child+1] > keys[child])
+				child++;
+			if (keys[child] <= key)
+				break;
+			slots[i] = slots[child];
+			keys[i] = keys[child];
+			i = child;
+		}//end while
+		slots[i] = slot;
+		keys[i] = key;
+		return slot;
+	}//end offer
+
+	/**
+	 * Forget all candidates; the taken slots are always 0..size-1
+	 */
+	public void clear() {
+		size = 0;
+	}//end clear
+
+	/**
+	 * @return number of slots taken
+	 */
+	public int size() {
+		return size;
+	}//end size
+
+	/**
+	 * @return the highest key kept, only meaningful if the heap is not empty
+	 */
+	public long peekWorstKey() {
+		return keys[0];
+	}//end peekWorstKey
+
+}//end class
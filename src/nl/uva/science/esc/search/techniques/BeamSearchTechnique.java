@@ -0,0 +1,248 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Beam search: breadth-first search that keeps only the "width" most
+ * promising nodes of each level. All children of the nodes in the beam are
+ * generated, and the best "width" of them form the beam of the next level.
+ * Promising means: lowest cost, or - if asked for and the problem can
+ * estimate it - lowest cost plus estimated remaining cost.
+ * It is not exhaustive, so the best goal state found need not be optimal,
+ * and a narrow beam may even end with only dead ends and no goal state.
+ * In return the time and memory it takes are predictable: at most
+ * levels x width expansions, and two beams of width nodes.
+ *
+ * As in the BreadthFirstSearchTechnique, a node is a record of longs: its
+ * cost and the state packed by the problem. The two beams are arrays of
+ * these records that swap roles every level. The choice of the best
+ * children is made by a BeamHeap, which hands out the slot of the beam
+ * array to write an accepted child in.
+ * @author kaper
+ *
+ */
+public class BeamSearchTechnique implements Technique {
+
+	private int levels;        //number of levels to develop in the search tree
+	private int width;         //number of nodes to keep per level
+	private boolean useheuristic; //order by cost plus estimate?
+	private int level;         //level being expanded
+	private int beamsize;      //number of nodes in the beam being expanded
+	private long nodecount;    //how many nodes were generated
+	private long goalcount;    //how many goal states were examined
+	private long bestcost;     //best cost found up to now
+	private static final long UNKNOWNCOST = 99999;
+	private State beststate;   //remember the best solution
+	private long bestnodenumber; //compare it to nodecount to guess how old it is
+	private DeterministicSearchProblem p;   //the problem to solve !
+	private HeuristicSearchProblem h;       //the same problem, if it can estimate, or null
+	private boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param width, number of nodes to keep per level
+	 */
+	public BeamSearchTechnique(DeterministicSearchProblem p, int levels, int width) {
+		this(p, levels, width, false);
+	}//end constructor
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param width, number of nodes to keep per level
+	 * @param useheuristic, add the estimated remaining cost when choosing the
+	 *    nodes to keep; only if p is a HeuristicSearchProblem
+	 */
+	public BeamSearchTechnique(
+		DeterministicSearchProblem p, int levels, int width, boolean useheuristic
+	) {
+		this.p = p;
+		this.h = (useheuristic && p instanceof HeuristicSearchProblem) ?
+				(HeuristicSearchProblem) p : null;
+		this.levels = levels;
+		this.width = Math.max(1, width);
+		this.useheuristic = (h != null);
+		this.level = 0;
+		this.beamsize = 0;
+		this.nodecount = 0;
+		this.goalcount = 0;
+		this.bestcost = UNKNOWNCOST;
+		this.beststate = null;
+		this.bestnodenumber = 0;
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		p.initState(); //different from stochastic which needs a GOAL state for starters!
+		int recordsize = 1 + p.getPackedStateSize(); //cost, packed state
+		long[] beam = new long[width * recordsize];  //nodes to expand
+		long[] next = new long[width * recordsize];  //best children, by slot
+		BeamHeap heap = new BeamHeap(width);
+		int[] movevalue = new int[1];    //move to the child
+		int[] moveposition = new int[1];
+		//the root node
+		beam[0] = 0;
+		p.packState(beam, 1);
+		beamsize = 1;
+		if (p.goalTest(0))
+			goalFound(0);
+		for (level=0; level<levels && beamsize>0 && running; level++) {
+			heap.clear();
+			for (int i=0; i<beamsize && running; i++) {
+				int offset = i * recordsize;
+				long cost = beam[offset];
+				p.unpackState(beam, offset + 1, level);
+				boolean ok = p.generateDeterministicMove(level);
+				while (ok) {   //while the node is not out of moves
+					long newcost = cost + p.getDeltaCostDeterministicMove();
+					p.doForwardMove(movevalue, moveposition, 0);
+					nodecount++;
+					if (p.goalTest(level + 1)) {
+						//costs do not go down, so a goal need not stay in the beam
+						goalFound(newcost);
+					}
+					else {
+						long key = (h != null) ? newcost + h.getHeuristicCost(level + 1) : newcost;
+						int slot = heap.offer(key);
+						if (slot >= 0) {
+							next[slot * recordsize] = newcost;
+							p.packState(next, slot * recordsize + 1);
+						}//end if
+					}//end if
+					p.retreatMove(movevalue[0], moveposition[0]);  //backtrack to try next move
+					ok = p.generateDeterministicMove(level);
+				}//end while
+			}//next i
+			//the best children are the next beam
+			long[] swap = beam;
+			beam = next;
+			next = swap;
+			beamsize = heap.size();
+			//for debugging, comment out in production
+			if (level % 10 == 0) {
+				System.out.println("level expanded: "+level);
+				System.out.println("nodes generated: "+nodecount);
+				System.out.println("goal states: "+goalcount);
+				System.out.println("best cost: "+bestcost);
+				System.out.println();
+			}//end if
+		}//next level
+		running = false;
+	}//end run
+
+	/**
+	 * The problem is in a goal state: remember it if it is the best one
+	 * @param cost, its cost
+	 */
+	private void goalFound(long cost) {
+		goalcount++;
+		if (cost < bestcost || bestcost==UNKNOWNCOST) {
+			bestcost = cost;
+			beststate = p.getState().stateClone();
+			bestnodenumber = nodecount;
+		}//end if
+	}//end goalFound
+
+	public long getNodeCount() {
+		return nodecount;
+	}//end getNodeCount
+
+	public long getGoalCount() {
+		return goalcount;
+	}//end getGoalCount
+
+	public int getLevel() {
+		return level;
+	}//end getLevel
+
+	public State getCurrentState() {
+		return p.getState(); //take care to only read it
+	}//end getCurrentState
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	public long getBestNodeNumber() {
+		return bestnodenumber;
+	}//end getBestNodeNumber
+
+	/**
+	 * Return a readable description of the best goal state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		String txt = "";
+		txt += "bestcost: "+bestcost+"\n";
+		if (beststate == null)
+			return txt + "no goal state found, the beam ran into dead ends\n";
+		p.setState(beststate); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"level", "beamsize", "nodecount", "goalcount", "bestcost", "bestnodenumber", "useheuristic"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(level),
+			String.valueOf(beamsize),
+			String.valueOf(nodecount),
+			String.valueOf(goalcount),
+			String.valueOf(bestcost),
+			String.valueOf(bestnodenumber),
+			String.valueOf(useheuristic)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("width", true, InputType.POSITIVEINT),
+				new Parameter("useheuristic", false, InputType.INT)
+				};
+	}//end advertiseParameters
+
+}//end class
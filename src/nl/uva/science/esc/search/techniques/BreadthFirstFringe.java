@@ -0,0 +1,204 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * FIFO queue of search nodes for breadth-first search, stored compactly.
+ * A node is a record of a fixed number of longs (e.g. cost, level and a
+ * packed state). Records are kept in an array-backed ring buffer.
+ *
+ * The ring buffer has a fixed capacity, derived from a memory budget. When
+ * it is full, new records are spilled sequentially to memory-mapped
+ * temporary files, each holding as many records as the ring. Once records
+ * are being spilled, all later records go to disk as well, to keep the
+ * FIFO order. When the ring runs empty, the oldest file is streamed back
+ * into it and deleted. Because the queue holds the current level followed
+ * by the next one, the files come back level by level.
+ * @author kaper
+ *
+ */
+public class BreadthFirstFringe {
+	private int recordsize;    //number of longs per record
+	private int capacity;      //number of records that fit in the ring
+	private long[] ring;       //the ring buffer
+	private int head;          //record index of the oldest record in the ring
+	private int count;         //number of records in the ring
+	//spilled records
+	private Deque<Path> spillfiles;   //full files, oldest first
+	private Deque<Integer> spillcounts; //number of records in each of them
+	private Path writefile;           //file being written, or null
+	private FileChannel writechannel;
+	private LongBuffer writebuffer;   //memory-mapped view of writefile
+	private int writecount;           //number of records in writefile
+	private long spilled;             //number of records on disk
+	private long spilledtotal;        //number of records ever spilled
+
+	/**
+	 * Constructor
+	 * @param recordsize, number of longs per record
+	 * @param memorybudget, bytes that the ring buffer may use
+	 */
+	public BreadthFirstFringe(int recordsize, long memorybudget) {
+		this.recordsize = recordsize;
+		this.capacity = (int) Math.max(1,
+				Math.min(Integer.MAX_VALUE / recordsize, memorybudget / (8L * recordsize)));
+		this.ring = new long[capacity * recordsize];
+		this.head = 0;
+		this.count = 0;
+		this.spillfiles = new ArrayDeque<Path>();
+		this.spillcounts = new ArrayDeque<Integer>();
+		this.writefile = null;
+		this.spilled = 0;
+		this.spilledtotal = 0;
+	}//end constructor
+
+	/**
+	 * Add a record at the end of the queue
+	 * @param rec, array containing the record
+	 * @param offset, index of its first long
+	 * @throws IOException, if spilling to disk fails
+	 */
+	public void add(long[] rec, int offset) throws IOException {
+		if (spilled == 0 && count < capacity) {
+			int tail = (head + count) % capacity;
+			System.arraycopy(rec, offset, ring, tail * recordsize, recordsize);
+			count++;
+		}
+		else {
+			spill(rec, offset);
+		}//end if
+	}//end add
+
+	/**
+	 * Remove the record at the start of the queue
+	 * @param rec, array to copy the record to
+	 * @param offset, index to copy its first long to
+	 * @return false if the queue was empty
+	 * @throws IOException, if reading back from disk fails
+	 */
+	public boolean poll(long[] rec, int offset) throws IOException {
+		if (count == 0 && spilled > 0)
+			refill();
+		if (count == 0)
+			return false;
+		System.arraycopy(ring, head * recordsize, rec, offset, recordsize);
+		head = (head + 1) % capacity;
+		count--;
+		return true;
+	}//end poll
+
+	/**
+	 * Write a record at the end of the current spill file
+	 */
+	private void spill(long[] rec, int offset) throws IOException {
+		if (writefile == null) {
+			writefile = Files.createTempFile("bfsfringe", ".tmp");
+			writechannel = FileChannel.open(writefile,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			writebuffer = writechannel.map(
+					FileChannel.MapMode.READ_WRITE, 0, 8L * capacity * recordsize
+			).asLongBuffer();
+			writecount = 0;
+		}//end if
+		writebuffer.put(rec, offset, recordsize);
+		writecount++;
+		spilled++;
+		spilledtotal++;
+		if (writecount == capacity)
+			closeWriteFile();
+	}//end spill
+
+	/**
+	 * The file being written is complete: queue it for reading back
+	 */
+	private void closeWriteFile() throws IOException {
+		writechannel.close();
+		spillfiles.add(writefile);
+		spillcounts.add(writecount);
+		writefile = null;
+		writechannel = null;
+		writebuffer = null; //the mapping is released when it is garbage
+	}//end closeWriteFile
+
+	/**
+	 * The ring is empty: stream the oldest spill file back into it
+	 */
+	private void refill() throws IOException {
+		if (spillfiles.isEmpty())
+			closeWriteFile(); //only the file being written is left
+		Path f = spillfiles.poll();
+		int n = spillcounts.poll();
+		FileChannel ch = FileChannel.open(f, StandardOpenOption.READ);
+		try {
+			LongBuffer in = ch.map(
+					FileChannel.MapMode.READ_ONLY, 0, 8L * n * recordsize
+			).asLongBuffer();
+			in.get(ring, 0, n * recordsize);
+		} finally {
+			ch.close();
+		}
+		head = 0;
+		count = n;
+		spilled -= n;
+		deleteFile(f);
+	}//end refill
+
+	/**
+	 * Delete a spill file. On some platforms a file can not be deleted while
+	 * a mapping of it still exists; it is then deleted when the JVM exits.
+	 */
+	private void deleteFile(Path f) {
+		try {
+			Files.deleteIfExists(f);
+		} catch (IOException e) {
+			f.toFile().deleteOnExit();
+		}
+	}//end deleteFile
+
+	/**
+	 * Empty the queue and delete all spill files
+	 */
+	public void close() {
+		try {
+			if (writefile != null)
+				closeWriteFile();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		while (!spillfiles.isEmpty()) {
+			deleteFile(spillfiles.poll());
+		}
+		spillcounts.clear();
+		count = 0;
+		spilled = 0;
+	}//end close
+
+	/**
+	 * @return number of records in the queue, in memory or on disk
+	 */
+	public long size() {
+		return count + spilled;
+	}//end size
+
+	/**
+	 * @return number of records in the queue that are on disk
+	 */
+	public long getSpilled() {
+		return spilled;
+	}//end getSpilled
+
+	/**
+	 * @return number of records that were ever spilled to disk
+	 */
+	public long getSpilledTotal() {
+		return spilledtotal;
+	}//end getSpilledTotal
+
+}//end class
@@ -1,114 +1,203 @@
 package nl.uva.science.esc.search.techniques;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.io.IOException;
 
+import nl.uva.science.esc.matchmaker.Controller.InputType;
 import nl.uva.science.esc.search.problems.*;
-import nl.uva.science.esc.search.views.PropertyAdvertiser;
+import nl.uva.science.esc.search.views.Parameter;
 
 /**
  * The simple breadth-first exhaustive search technique.
- * We are not looking for the first goal state but for the goal state that has 
+ * We are not looking for the first goal state but for the goal state that has
  * the absolute least cost, within a certain maximum depth of the searchtree.
  * See Russell and Norvig for more.
+ *
+ * The fringe can get very large. A node in it is not a State clone, but a
+ * record of longs: cost, level and the state packed by the problem. The
+ * BreadthFirstFringe keeps these records in a ring buffer of limited size
+ * and spills the rest to temporary files.
+ * 
+ * Optionally a TranspositionTable is used: a node that was generated before
+ * (same state hash) at an equal or lower cost is not put in the fringe.
  * @author kaper
  *
  */
 public class BreadthFirstSearchTechnique implements Technique {
-	
-	private Queue<BreadthFirstSearchNode> fringe; //fringe of unexpanded Nodes 
+
+	private BreadthFirstFringe fringe; //fringe of unexpanded nodes
 		//kept in a FIFO queue
 	private int levels;        //number of levels to develop in the search tree
+	private long memorybudget; //bytes the fringe may use in memory
 	private int nodecount;     //how many Nodes were generated
 	private int goalcount;     //hoe many goal States were examined
 	private long bestcost;      //best cost found up to now
 	private static final long UNKNOWNCOST = 99999;
-	private BreadthFirstSearchNode bestNode; //remember the best solution
+	private static final int DEFAULTBUDGET = 256; //megabytes
+	private State beststate;   //remember the best solution
 	private int bestnodenumber; //compare it to nodecount to guess how old it is
 	private DeterministicSearchProblem p;   //the problem to solve !
 	private boolean running;   //we can stop the process by setting this to no
-	
+	private TranspositionTable table; //costs of nodes seen before, or null
+	private long prunedcount;  //how many nodes were dominated by the table
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 */
 	public BreadthFirstSearchTechnique(DeterministicSearchProblem p, int levels) {
-		this.fringe = new LinkedList<BreadthFirstSearchNode>(); 
+		this(p, levels, DEFAULTBUDGET);
+	}//end constructor
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param memorybudget, megabytes the fringe may use before spilling to disk
+	 */
+	public BreadthFirstSearchTechnique(DeterministicSearchProblem p, int levels, int memorybudget) {
+		this(p, levels, memorybudget, 0);
+	}//end constructor
+	
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param memorybudget, megabytes the fringe may use before spilling to disk
+	 * @param tablememory, megabytes for the transposition table, 0: no table
+	 */
+	public BreadthFirstSearchTechnique(
+		DeterministicSearchProblem p, int levels, int memorybudget, int tablememory
+	) {
+		this.fringe = null; //its record size is known when we start
 		this.levels = levels;
+		this.memorybudget = memorybudget * 1024L * 1024L;
 		this.nodecount = 0;
 		this.goalcount = 0;
 		this.bestcost = UNKNOWNCOST;
-		this.bestNode = null;
+		this.beststate = null;
 		this.bestnodenumber = 0;
 		this.p = p;
 		this.running = false;
+		this.table = (tablememory > 0) ? 
+				new TranspositionTable(tablememory * 1024L * 1024L) : null;
+		this.prunedcount = 0;
 	}//end constructor
-	
+
 	public void run() {
 		running = true;
 		p.initState(); //different from stochastic which needs a GOAL state for starters!
-		State s = p.getState().stateClone();
-		fringe.add(new BreadthFirstSearchNode(s, 0, 0));
-		while(running && fringe.size()>0 && fringe.peek().getLevel()<=levels-1) {
-			//Pop one Node from the beginning of the fringe-queue.
-			//Expand it, and put the resulting Nodes at the end of that queue
-			BreadthFirstSearchNode n = fringe.poll(); //Node to expand
-			int level = n.getLevel();
-			long cost = n.getCost();
-			p.setState(n.getState());
-			boolean ok = p.generateDeterministicMove(level);
-			while (ok) {   //while the Node is not out of Moves
-				long newcost = cost + p.getDeltaCostDeterministicMove();
-				Move m = p.doForwardMove();
-				BreadthFirstSearchNode newnode = new BreadthFirstSearchNode(
-						p.getState().stateClone(), newcost, level + 1
-				);
-				fringe.add(newnode); //save result at the end of the queue
-				nodecount++;
-				if (p.goalTest(level + 1)) {
-					goalcount++;
-					if (newcost < bestcost || bestcost==UNKNOWNCOST) {
-						bestcost = newcost;
-						bestNode = newnode;
-						bestnodenumber = nodecount;
+		//a node record: cost, level, packed state
+		int recordsize = 2 + p.getPackedStateSize();
+		long[] node = new long[recordsize];   //node to expand
+		long[] child = new long[recordsize];  //node generated
+		int[] movevalue = new int[1];         //move to the child
+		int[] moveposition = new int[1];
+		fringe = new BreadthFirstFringe(recordsize, memorybudget);
+		try {
+			node[0] = 0;
+			node[1] = 0;
+			p.packState(node, 2);
+			fringe.add(node, 0);
+			//Take one node from the beginning of the fringe-queue.
+			//Expand it, and put the resulting nodes at the end of that queue
+			while (running && fringe.poll(node, 0)) {
+				int level = (int) node[1];
+				if (level > levels - 1)
+					break; //the queue is FIFO, so all remaining nodes are this deep
+				long cost = node[0];
+				p.unpackState(node, 2, level);
+				boolean ok = p.generateDeterministicMove(level);
+				while (ok) {   //while the Node is not out of Moves
+					long newcost = cost + p.getDeltaCostDeterministicMove();
+					p.doForwardMove(movevalue, moveposition, 0);
+					if (table != null && 
+							table.isDominated(p.getStateHash(level + 1), newcost, level + 1)) {
+						//generated before at no higher cost: skip it
+						prunedcount++;
+						p.retreatMove(movevalue[0], moveposition[0]);
+						ok = p.generateDeterministicMove(level);
+						continue;
 					}//end if
-				}//end if
-				//for debugging, comment out in production
-				if (nodecount % 1000 ==0) {
-					System.out.println("nodes generated: "+nodecount);
-					System.out.println("goal states: "+goalcount);
-					System.out.println("best cost: "+bestcost);
-					System.out.println();
-				}//end if
-				p.retreatMove(m);  //backtrack to try next move
-				ok = p.generateDeterministicMove(level);			
-			}//end while			
-		}//end while
-		//In the fringe we now have only nodes of level N
+					child[0] = newcost;
+					child[1] = level + 1;
+					p.packState(child, 2);
+					fringe.add(child, 0); //save result at the end of the queue
+					nodecount++;
+					if (p.goalTest(level + 1)) {
+						goalcount++;
+						if (newcost < bestcost || bestcost==UNKNOWNCOST) {
+							bestcost = newcost;
+							beststate = p.getState().stateClone();
+							bestnodenumber = nodecount;
+						}//end if
+					}//end if
+					//for debugging, comment out in production
+					if (nodecount % 1000 ==0) {
+						System.out.println("nodes generated: "+nodecount);
+						System.out.println("goal states: "+goalcount);
+						System.out.println("best cost: "+bestcost);
+						System.out.println("fringe size: "+fringe.size());
+						System.out.println();
+					}//end if
+					p.retreatMove(movevalue[0], moveposition[0]);  //backtrack to try next move
+					ok = p.generateDeterministicMove(level);
+				}//end while
+			}//end while
+		} catch (IOException e) {
+			//without the spilled nodes the search is not exhaustive: stop
+			e.printStackTrace();
+			running = false;
+		} finally {
+			fringe.close(); //also removes the temporary files
+		}
+		//In the fringe we had only nodes of level N
 		//If we were sure the solution is in level N we could postpone looking
 		//for goal states till we are here. (But that is less than general)
 	}//end run
-	
+
 	public int getNodeCount() {
 		return nodecount;
 	}//end getNodeCount
-	
+
 	public int getGoalCount() {
 		return goalcount;
 	}//end getGoalCount
-	
+
 	public State getCurrentState() {
 		return p.getState(); //take care to only read it
 	}//end getCurrentState
-	
+
 	public long getBestCost() {
 		return bestcost;
 	}//end getBestCost
-	
+
 	public State getBestState() {
-		return bestNode.getState();
+		return beststate;    //it's a clone and has only one goal: being read
 	}//end getBestState
-	
+
 	public int getBestNodeNumber() {
 		return bestnodenumber;
 	}//end getBestNodeNumber
+
+	/**
+	 * @return number of nodes in the fringe, 0 before starting
+	 */
+	public long getFringeSize() {
+		return (fringe == null) ? 0 : fringe.size();
+	}//end getFringeSize
+
+	public long getPrunedCount() {
+		return prunedcount;
+	}//end getPrunedCount
 	
+	/**
+	 * @return number of nodes that had to be spilled to disk up to now
+	 */
+	public long getSpilledTotal() {
+		return (fringe == null) ? 0 : fringe.getSpilledTotal();
+	}//end getSpilledTotal
+
 	/**
 	 * Return a readable description of the best goal state found
 	 * @return the text
@@ -116,33 +205,35 @@ public class BreadthFirstSearchTechnique implements Technique {
 	public String showBestState() {
 		String txt = "";
 		txt += "bestcost: "+bestcost+"\n";
-		p.setState(bestNode.getState()); //the problem box will show it
+		p.setState(beststate); //the problem box will show it
 		txt += p.showState();
 		return txt;
 	}//end showBestMoves
-	
+
 	/**
 	 * Send the run method a stop signal
 	 */
 	public void stopRunning() {
 		running = false;
 	}//end stopRunning
-	
+
 	/**
 	 * Is it running?
 	 */
 	public boolean isRunning() {
 		return running;
 	}//end isRunning
-	
+
 	/**
 	 * Advertise simple properties meant for display in the UI
 	 * @return array of names of properties
 	 */
 	public String[] advertiseSimpleProperties() {
-		return new String[] {"nodecount", "goalcount", "bestcost", "bestnodenumber"};
+		return new String[] {
+			"nodecount", "goalcount", "bestcost", "bestnodenumber", "fringesize", "spilled", "prunedcount"
+		};
 	}//end advertiseSimpleProperties
-	
+
 	/**
 	 * Values corresponding to the advertised simple properties
 	 * converted to Strings for easy display
@@ -150,20 +241,27 @@ public class BreadthFirstSearchTechnique implements Technique {
 	 */
 	public String[] simplePropertyValues() {
 		return new String[] {
-			String.valueOf(nodecount), 
-			String.valueOf(goalcount), 
-			String.valueOf(bestcost), 
-			String.valueOf(bestnodenumber)
+			String.valueOf(nodecount),
+			String.valueOf(goalcount),
+			String.valueOf(bestcost),
+			String.valueOf(bestnodenumber),
+			String.valueOf(getFringeSize()),
+			String.valueOf(getSpilledTotal()),
+			String.valueOf(prunedcount)
 		};
 	}//end simplePropertyValues
-	
+
 	/**
 	 * Advertise parameters that the GUI must get from the user before calling
 	 * the constructor
-	 * @return parametersnames array
+	 * @return parameters array
 	 */
-	public static String[] advertiseParameters() {
-		return new String[] {"level"};
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("memorybudget", true, InputType.POSITIVEINT),
+				new Parameter("tablememory", false, InputType.INT)
+				};
 	}//end advertiseParameters
-	
+
 }//end class
@@ -1,19 +1,27 @@
 package nl.uva.science.esc.search.techniques;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-
+import nl.uva.science.esc.matchmaker.Controller.InputType;
 import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
 import nl.uva.science.esc.search.views.PropertyAdvertiser;
 
 /**
  * The simple depth-first exhaustive search technique.
  * See Russell and Norvig for more.
+ * 
+ * The move stack consists of two primitive arrays indexed by level, filled 
+ * by the allocation-free move methods of the problem. So the hot loop does
+ * not create any objects: only a new best state is cloned.
+ * 
+ * Optionally a TranspositionTable is used: a node that is reached again
+ * (same state hash) at an equal or higher cost is not searched again.
  * @author kaper
  */
 public class DepthFirstSearchTechnique implements Technique {
 	
-	private Deque<Move> movestack;  //stack of moves that make up a solution
+	private int[] movevalues;    //stack of moves that make up a solution:
+	private int[] movepositions; //value and position of the move at each level
+	private int depth;         //number of moves on the stack
 	private long cost;         //cost of the current state
 	private int leafcount;    //how many goal states were investigated
 	//private Move[] bestmoves; //solution with lowest cost up to now
@@ -24,6 +32,9 @@ public class DepthFirstSearchTechnique implements Technique {
 	private static final long UNKNOWNCOST = 99999;
 	private DeterministicSearchProblem p;   //the problem to solve !
 	private boolean running;   //we can stop the process by setting this to no
+	private boolean verbose;   //print progress to the console
+	private TranspositionTable table; //costs of nodes seen before, or null
+	private long prunedcount;  //how many nodes were dominated by the table
 
 	/**
 	 * Constructor of the thechnique
@@ -31,8 +42,20 @@ public class DepthFirstSearchTechnique implements Technique {
 	 * @param levels, number of levels to develop in the search tree
 	 */
 	public DepthFirstSearchTechnique(DeterministicSearchProblem p, int levels) {
+		this(p, levels, 0);
+	}//end constructor
+	
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param tablememory, megabytes for the transposition table, 0: no table
+	 */
+	public DepthFirstSearchTechnique(DeterministicSearchProblem p, int levels, int tablememory) {
 		this.p = p;
-		movestack = new ArrayDeque<Move>(levels);
+		movevalues = new int[Math.max(levels, 1)];
+		movepositions = new int[Math.max(levels, 1)];
+		depth = 0;
 		cost = 0;  //the cost of an empty solution branch is zero
 		leafcount = 0;
 		beststate = null;  //initially there is no solution known
@@ -40,32 +63,48 @@ public class DepthFirstSearchTechnique implements Technique {
 		bestcost = UNKNOWNCOST;
 		bestleaf = 0;
 		running = false;
+		verbose = true;
+		table = (tablememory > 0) ? 
+				new TranspositionTable(tablememory * 1024L * 1024L) : null;
+		prunedcount = 0;
 	}//end constructor
 	
 	public void run() {
 		running = true;
 		p.initState(); //different from stochastic which needs a GOAL state for starters!
-		boolean ok = p.generateDeterministicMove(movestack.size());
+		depth = 0;
+		boolean ok = p.generateDeterministicMove(depth);
 		assert ok==true; //first move should succeed
 		do { 
 			//start new goal seek
-			while (!p.goalTest(movestack.size()) && ok ) {
+			while (!p.goalTest(depth) && ok ) {
 				//use generated move 
 				cost += p.getDeltaCostDeterministicMove();
-				Move m = p.doForwardMove();
-				movestack.push(m);
-				ok = p.generateDeterministicMove(movestack.size()); //may return false, but...
+				if (depth == movevalues.length) 
+					growMoveStack();
+				p.doForwardMove(movevalues, movepositions, depth);
+				depth++;
+				if (table != null && table.isDominated(p.getStateHash(depth), cost, depth)) {
+					//reached before at no higher cost: back to try the next move
+					prunedcount++;
+					depth--;
+					p.retreatMove(movevalues[depth], movepositions[depth]);
+					cost -= p.getDeltaCostDeterministicMove();
+				}//end if
+				ok = p.generateDeterministicMove(depth); //may return false, but...
 			}//end while
+			if (!ok && depth == 0) 
+				break; //all moves from the root are pruned: finished
 			leafcount++;
 			//we have a leaf, but is it a valid leaf, is it a goalstate?
-			if (p.goalTest(movestack.size()) && (cost<bestcost || beststate==null)) {
+			if (p.goalTest(depth) && (cost<bestcost || beststate==null)) {
 				//bestmoves = movestack.toArray(new Move[0]);
 				beststate = p.getState().stateClone();
 				bestcost = cost;
 				bestleaf = leafcount;
 			}//end if
 			//for debugging, comment out in production
-			if (leafcount % 1000 ==0) {
+			if (verbose && leafcount % 1000 ==0) {
 				System.out.println("cost: "+cost);
 				System.out.println("leafcount: "+leafcount);
 				System.out.println("bestcost: "+bestcost);
@@ -76,21 +115,45 @@ public class DepthFirstSearchTechnique implements Technique {
 			//at least once and maybe more, to get rid of nodes which
 			//are out of moves (all have been tried)
 			do { //at least once
-				Move m = movestack.pop();
-				p.retreatMove(m);
+				depth--;
+				p.retreatMove(movevalues[depth], movepositions[depth]);
 				cost -= p.getDeltaCostDeterministicMove();
-				ok = p.generateDeterministicMove(movestack.size());
-			} while (!ok && movestack.size()>0);
-		} while (running && movestack.size()>0 || (movestack.size()==0 && ok) );
+				ok = p.generateDeterministicMove(depth);
+			} while (!ok && depth>0);
+		} while (running && depth>0 || (depth==0 && ok) );
 	}//end run
 	
+	/**
+	 * Double the move stack, in case the tree is deeper than announced
+	 */
+	private void growMoveStack() {
+		int[] values1 = new int[movevalues.length * 2];
+		int[] positions1 = new int[movepositions.length * 2];
+		System.arraycopy(movevalues, 0, values1, 0, depth);
+		System.arraycopy(movepositions, 0, positions1, 0, depth);
+		movevalues = values1;
+		movepositions = positions1;
+	}//end growMoveStack
+	
 	//getters and setters for interaction with the UI
 	//take care, no threadsafety! 
 	//The run method is running in a different thread than the UI
 	
-	public Move[] getMoves() {
-		return movestack.toArray(new Move[0]);
-	}//end getMoves
+	/**
+	 * Switch the progress report on the console on or off
+	 * @param verbose
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}//end setVerbose
+	
+	public int getDepth() {
+		return depth;
+	}//end getDepth
+	
+	public long getPrunedCount() {
+		return prunedcount;
+	}//end getPrunedCount
 	
 	public long getCost() {
 		return cost;
@@ -155,7 +218,7 @@ public class DepthFirstSearchTechnique implements Technique {
 	 * @return array of names of properties
 	 */
 	public String[] advertiseSimpleProperties() {
-		return new String[] {"cost", "leafcount", "bestcost", "bestleaf"};
+		return new String[] {"cost", "leafcount", "bestcost", "bestleaf", "prunedcount"};
 	}//end advertiseSimpleProperties
 	
 	/**
@@ -168,17 +231,21 @@ public class DepthFirstSearchTechnique implements Technique {
 			String.valueOf(cost), 
 			String.valueOf(leafcount), 
 			String.valueOf(bestcost), 
-			String.valueOf(bestleaf)
+			String.valueOf(bestleaf),
+			String.valueOf(prunedcount)
 		};
 	}//end simplePropertyValues
 	
 	/**
 	 * Advertise parameters that the GUI must get from the user before calling
 	 * the constructor
-	 * @return parametersnames array
+	 * @return parameters array
 	 */
-	public static String[] advertiseParameters() {
-		return new String[] {"level"};
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("tablememory", false, InputType.INT)
+				};
 	}//end advertiseParameters
 	
 }//end class
@@ -0,0 +1,294 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import nl.uva.science.esc.search.problems.LocalSearchProblem;
+import nl.uva.science.esc.search.problems.State;
+
+/**
+ * Pool of elite solutions of a local search problem: a few good goal
+ * states that differ enough from each other, kept while restarts or other
+ * techniques go on searching. Two states are compared by their assignment:
+ * for each A the B it is in (-1 for none). Moving an A to another place of
+ * the same B changes nothing, so the distance of two states is the number
+ * of A's that are in a different B (a Hamming distance).
+ *
+ * A state offered to the pool is refused if it is in the pool already (the
+ * hash of the assignment is checked first), or if it is closer than
+ * mindistance to a member and not better than the best member. When the
+ * pool is full, a new member must be better than the worst one, and it
+ * replaces the member most like it among those that are not better than
+ * it (Resende and Ribeiro).
+ *
+ * The pool can be fed and drawn from by several threads: the members are
+ * immutable, and the methods that read or change the list of members are
+ * synchronized. Path relinking works on the problem copy of the caller and
+ * only reads a member, so it needs no lock.
+ * @author kaper
+ *
+ */
+public class ElitePool {
+
+	private int capacity;      //maximum number of members
+	private int mindistance;   //minimum distance of a new member to the others
+	private int[][] placesOfB; //for each B: its places
+	private List<Elite> members; //the pool
+	private long offered;      //number of states offered
+	private long accepted;     //number of states taken in
+
+	/**
+	 * An elite state, with its cost, assignment and hash; immutable
+	 */
+	public static class Elite {
+		private final State state;
+		private final long cost;
+		private final int[] assignment; //for each A: its B, or -1
+		private final long hash;
+
+		Elite(State state, long cost, int[] assignment, long hash) {
+			this.state = state;
+			this.cost = cost;
+			this.assignment = assignment;
+			this.hash = hash;
+		}//end constructor
+
+		public State getState() {
+			return state;   //it's a clone and has only one goal: being read
+		}//end getState
+
+		public long getCost() {
+			return cost;
+		}//end getCost
+	}//end class Elite
+
+	/**
+	 * Constructor
+	 * @param p, the problem, only its places and B's are looked at
+	 * @param capacity, maximum number of members
+	 * @param mindistance, minimum number of A's in which a new member must
+	 *    differ from each other member, unless it is the best
+	 */
+	public ElitePool(LocalSearchProblem p, int capacity, int mindistance) {
+		this.capacity = Math.max(1, capacity);
+		this.mindistance = Math.max(1, mindistance);
+		int n = p.getNumberOfPlaces();
+		int[] count = new int[p.getNumberOfBs()];
+		for (int j=0; j<n; j++) {
+			count[p.getBOfPlace(j)]++;
+		}//next j
+		this.placesOfB = new int[count.length][];
+		for (int b=0; b<count.length; b++) {
+			placesOfB[b] = new int[count[b]];
+			count[b] = 0;
+		}//next b
+		for (int j=0; j<n; j++) {
+			int b = p.getBOfPlace(j);
+			placesOfB[b][count[b]++] = j;
+		}//next j
+		this.members = new ArrayList<Elite>(this.capacity);
+		this.offered = 0;
+		this.accepted = 0;
+	}//end constructor
+
+	/**
+	 * Offer the current state of a problem copy to the pool
+	 * @param q, the problem copy, in a goal state
+	 * @param cost, the cost of that state
+	 * @return whether the state was taken in
+	 */
+	public boolean offer(LocalSearchProblem q, long cost) {
+		int[] assignment = assignment(q);
+		long hash = hash(assignment);
+		synchronized (this) {
+			offered++;
+			if (members.size() == capacity && cost >= worst().cost)
+				return false;
+			Elite best = null;
+			int closest = -1;          //most similar member that is not better
+			int closestdistance = Integer.MAX_VALUE;
+			int mindist = Integer.MAX_VALUE;
+			for (int i=0; i<members.size(); i++) {
+				Elite e = members.get(i);
+				if (e.hash == hash && distance(e.assignment, assignment) == 0)
+					return false;      //it's in the pool already
+				int d = distance(e.assignment, assignment);
+				mindist = Math.min(mindist, d);
+				if (e.cost >= cost && d < closestdistance) {
+					closest = i;
+					closestdistance = d;
+				}
+				if (best == null || e.cost < best.cost)
+					best = e;
+			}//next i
+			if (mindist < mindistance && best != null && cost >= best.cost)
+				return false;          //too much like a member
+			Elite mine = new Elite(q.getState().stateClone(), cost, assignment, hash);
+			if (members.size() < capacity)
+				members.add(mine);
+			else members.set(closest, mine);
+			accepted++;
+			return true;
+		}//end synchronized
+	}//end offer
+
+	/**
+	 * @return a random member, or null if the pool is empty
+	 */
+	public synchronized Elite draw(Random random) {
+		if (members.isEmpty())
+			return null;
+		return members.get(random.nextInt(members.size()));
+	}//end draw
+
+	/**
+	 * @return the best member, or null if the pool is empty
+	 */
+	public synchronized Elite best() {
+		Elite best = null;
+		for (Elite e : members) {
+			if (best == null || e.cost < best.cost)
+				best = e;
+		}//next e
+		return best;
+	}//end best
+
+	/**
+	 * @return the worst member, the pool should not be empty
+	 */
+	private Elite worst() {
+		Elite worst = members.get(0);
+		for (Elite e : members) {
+			if (e.cost > worst.cost)
+				worst = e;
+		}//next e
+		return worst;
+	}//end worst
+
+	public synchronized int size() {
+		return members.size();
+	}//end size
+
+	public synchronized long getOffered() {
+		return offered;
+	}//end getOffered
+
+	public synchronized long getAccepted() {
+		return accepted;
+	}//end getAccepted
+
+	/**
+	 * Path relinking: walk from the current state of a problem copy towards
+	 * a member of the pool. Each step is the swap that puts one more A in
+	 * its B of the guide, with the lowest change in cost; the swap partner
+	 * is an A that is not in its B of the guide, or an empty place. The walk
+	 * ends at the guide, or where no such swap is allowed. The swaps are
+	 * remembered, so that the walk can be undone back to the best state
+	 * strictly between start and guide.
+	 * @param q, the problem copy, in a goal state; it is left in the best
+	 *    intermediate state of the walk, or in its start if there is none
+	 * @param cost, the cost of the start
+	 * @param guide, the member to walk to
+	 * @return the cost of the state q is left in
+	 */
+	public long relink(LocalSearchProblem q, long cost, Elite guide) {
+		int[] target = guide.assignment;
+		int n = q.getNumberOfPlaces();
+		int[] swap1 = new int[n];  //the walk
+		int[] swap2 = new int[n];
+		long[] stepcost = new long[n + 1]; //cost after each step
+		stepcost[0] = cost;
+		int steps = 0;
+		boolean arrived = false;
+		while (!arrived && steps < n) {
+			int movei = -1;
+			int movej = -1;
+			long movedelta = Long.MAX_VALUE;
+			arrived = true;
+			for (int i=0; i<n; i++) {
+				int a = q.getAInPlace(i);
+				if (a == -1 || target[a] == -1 || target[a] == q.getBOfPlace(i))
+					continue;
+				arrived = false;
+				int[] candidates = placesOfB[target[a]];
+				for (int k=0; k<candidates.length; k++) {
+					int j = candidates[k];
+					int a2 = q.getAInPlace(j);
+					if (a2 != -1 && target[a2] == q.getBOfPlace(j))
+						continue;   //that one is where it should be
+					if (!q.planSwap(i, j))
+						continue;
+					long delta = q.getDeltaCostRandomMove();
+					if (delta < movedelta) {
+						movei = i;
+						movej = j;
+						movedelta = delta;
+					}
+				}//next k
+			}//next i
+			if (arrived || movei == -1)
+				break;
+			q.planSwap(movei, movej);
+			q.acceptMove();
+			swap1[steps] = movei;
+			swap2[steps] = movej;
+			steps++;
+			stepcost[steps] = stepcost[steps - 1] + movedelta;
+		}//end while
+		//the best intermediate state; the guide itself is not one
+		int last = arrived ? steps - 1 : steps;
+		int beststep = 0;
+		for (int s=1; s<=last; s++) {
+			if (beststep == 0 || stepcost[s] < stepcost[beststep])
+				beststep = s;
+		}//next s
+		//undo the steps after it, a swap undoes itself
+		while (steps > beststep) {
+			steps--;
+			q.planSwap(swap1[steps], swap2[steps]);
+			q.acceptMove();
+		}//end while
+		return stepcost[beststep];
+	}//end relink
+
+	/**
+	 * @return for each A of the problem copy: its B, or -1
+	 */
+	private static int[] assignment(LocalSearchProblem q) {
+		int[] assignment = new int[q.getNumberOfAs()];
+		Arrays.fill(assignment, -1);
+		for (int j=0; j<q.getNumberOfPlaces(); j++) {
+			int a = q.getAInPlace(j);
+			if (a != -1)
+				assignment[a] = q.getBOfPlace(j);
+		}//next j
+		return assignment;
+	}//end assignment
+
+	/**
+	 * FNV-1a hash of an assignment
+	 */
+	private static long hash(int[] assignment) {
+		long h = 0xcbf29ce484222325L;
+		for (int a=0; a<assignment.length; a++) {
+			h ^= assignment[a];
+			h *= 0x100000001b3L;
+		}//next a
+		return h;
+	}//end hash
+
+	/**
+	 * @return the number of A's that have a different B in two assignments
+	 */
+	public static int distance(int[] x, int[] y) {
+		int d = 0;
+		for (int a=0; a<x.length; a++) {
+			if (x[a] != y[a])
+				d++;
+		}//next a
+		return d;
+	}//end distance
+
+}//end class
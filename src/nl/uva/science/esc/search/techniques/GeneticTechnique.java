@@ -0,0 +1,297 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Genetic algorithm for the many to one matching problems. An individual is
+ * a places array, the whole population is kept in one int buffer:
+ * individual i starts at i * the number of places. The next generation is
+ * written to a second buffer, then the two swap roles.
+ *
+ * Each generation the best individual survives unchanged (elitism). The
+ * other children get two parents chosen by binary tournament, and the
+ * crossover of the problem: the A's on which the parents agree keep their
+ * B, the others inherit from either parent, and the result is repaired into
+ * a goal state. Then, with probability mutationrate, a child gets a random
+ * swap, as used by simulated annealing, and again with the same probability
+ * another one, and so on.
+ *
+ * The first individual is the initial goal state of the problem, the
+ * others are made by randomized greedy construction. The costs of a
+ * generation are computed on a fork/join pool; they only read the buffer.
+ * @author kaper
+ *
+ */
+public class GeneticTechnique implements Technique {
+
+	private int populationsize; //number of individuals
+	private int generations;   //number of generations to make
+	private float mutationrate; //probability of a (further) random swap
+	private int threads;       //number of threads for the cost computation
+	private int generation;    //generation being made
+	private long bestcost;     //cost of the best individual up to now
+	private int bestgeneration; //generation in which it was made
+	private double averagecost; //average cost of the last generation
+	private State beststate;   //the best individual
+	private Random random;
+	private ManyToOneMatchingProblem p;   //the problem to solve !
+	private volatile boolean running;   //we can stop the process by setting this to no
+	private static final long UNKNOWNCOST = 99999;
+	private static final int RCLSIZE = 5;   //candidate list for the initial population
+	private static final int MINEVALUATION = 8;  //individuals per fork/join task, at least
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param populationsize, number of individuals
+	 * @param generations, number of generations to make
+	 * @param mutationrate, probability of a random swap for a child, and
+	 *    of each further one
+	 * @param threads, number of threads to compute the costs
+	 */
+	public GeneticTechnique(
+		ManyToOneMatchingProblem p, int populationsize, int generations,
+		float mutationrate, int threads
+	) {
+		this.p = p;
+		this.populationsize = Math.max(2, populationsize);
+		this.generations = generations;
+		this.mutationrate = Math.min(mutationrate, (float) 0.99);
+		this.threads = Math.max(1, threads);
+		this.generation = 0;
+		this.bestcost = UNKNOWNCOST;
+		this.bestgeneration = 0;
+		this.averagecost = 0;
+		this.beststate = null;
+		this.random = new Random();
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		int n = p.getNumberOfPlaces();
+		int[] population = new int[populationsize * n];
+		int[] offspring = new int[populationsize * n];
+		long[] cost = new long[populationsize];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			//the first generation
+			p.initGoalState();
+			p.copyPlaces(population, 0);
+			for (int i=1; i<populationsize; i++) {
+				p.initRandomizedGreedyState(random, RCLSIZE);
+				p.copyPlaces(population, i * n);
+			}//next i
+			pool.invoke(new Evaluation(population, cost, 0, populationsize));
+			int best = select(population, cost);
+			for (generation=1; generation<=generations && running; generation++) {
+				//the best one survives, the others are children
+				System.arraycopy(population, best * n, offspring, 0, n);
+				for (int i=1; i<populationsize; i++) {
+					int parent1 = tournament(cost);
+					int parent2 = tournament(cost);
+					p.crossover(population, parent1 * n, parent2 * n, offspring, i * n, random);
+					if (random.nextFloat() < mutationrate) {
+						p.setPlaces(offspring, i * n);
+						do {
+							p.generateRandomMove();
+							p.acceptMove();
+						} while (random.nextFloat() < mutationrate);
+						p.copyPlaces(offspring, i * n);
+					}//end if
+				}//next i
+				int[] swap = population;
+				population = offspring;
+				offspring = swap;
+				pool.invoke(new Evaluation(population, cost, 0, populationsize));
+				best = select(population, cost);
+				//for debugging, comment out in production
+				if (generation % 10 == 0) {
+					System.out.println("generation: "+generation);
+					System.out.println("averagecost: "+averagecost);
+					System.out.println("bestcost: "+bestcost);
+					System.out.println("bestgeneration: "+bestgeneration);
+					System.out.println();
+				}//end if
+			}//next generation
+			generation--; //the last one that was made
+		} catch (Exception e) {
+			e.printStackTrace(); //no goal state exists
+		} finally {
+			pool.shutdown();
+		}
+		if (beststate != null)
+			p.setState(beststate.stateClone()); //leave the problem in the best state
+		running = false;
+	}//end run
+
+	/**
+	 * Find the best individual of a new generation, remember it if it is
+	 * the best up to now, and compute the average cost
+	 * @return its index
+	 */
+	private int select(int[] population, long[] cost) {
+		int best = 0;
+		long sum = 0;
+		for (int i=0; i<populationsize; i++) {
+			sum += cost[i];
+			if (cost[i] < cost[best])
+				best = i;
+		}//next i
+		averagecost = (double) sum / populationsize;
+		if (cost[best] < bestcost || beststate == null) {
+			bestcost = cost[best];
+			bestgeneration = generation;
+			p.setPlaces(population, best * p.getNumberOfPlaces());
+			beststate = p.getState().stateClone();
+		}//end if
+		return best;
+	}//end select
+
+	/**
+	 * Binary tournament: the cheaper of two random individuals
+	 * @return its index
+	 */
+	private int tournament(long[] cost) {
+		int i = random.nextInt(populationsize);
+		int j = random.nextInt(populationsize);
+		return (cost[i] <= cost[j]) ? i : j;
+	}//end tournament
+
+	/**
+	 * Computes the costs of a range of individuals, splitting it in halves
+	 * for the pool until the ranges are small
+	 */
+	private class Evaluation extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int[] population;
+		private long[] cost;
+		private int from;   //first individual
+		private int to;     //first individual not to do
+
+		Evaluation(int[] population, long[] cost, int from, int to) {
+			this.population = population;
+			this.cost = cost;
+			this.from = from;
+			this.to = to;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			int size = Math.max(MINEVALUATION, populationsize / (4 * threads));
+			if (to - from > size) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Evaluation(population, cost, from, middle),
+						new Evaluation(population, cost, middle, to));
+				return;
+			}//end if
+			int n = p.getNumberOfPlaces();
+			for (int i=from; i<to; i++) {
+				cost[i] = p.getCost(population, i * n);
+			}//next i
+		}//end compute
+	}//end class Evaluation
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+
+	public int getGeneration() {
+		return generation;
+	}//end getGeneration
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public int getBestGeneration() {
+		return bestgeneration;
+	}//end getBestGeneration
+
+	public double getAverageCost() {
+		return averagecost;
+	}//end getAverageCost
+
+	/**
+	 * The population is not a single state; we show the best one instead.
+	 */
+	public State getCurrentState() {
+		return beststate;
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		String txt = "";
+		txt += "bestcost: "+bestcost+"\n";
+		txt += "found in generation: "+bestgeneration+"\n";
+		if (beststate == null)
+			return txt;
+		p.setState(beststate.stateClone()); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {"generation", "averagecost", "bestcost", "bestgeneration"};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(generation),
+			String.valueOf(averagecost),
+			String.valueOf(bestcost),
+			String.valueOf(bestgeneration)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("populationsize", true, InputType.POSITIVEINT),
+				new Parameter("generations", true, InputType.POSITIVEINT),
+				new Parameter("mutationrate", true, InputType.FRACTION),
+				new Parameter("threads", false, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
@@ -0,0 +1,364 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * GRASP: greedy randomized adaptive search procedure, run on all cores of
+ * the machine.
+ *
+ * Each iteration builds a goal state by randomized greedy construction: the
+ * problem assigns the A's one by one, choosing at random among the rclsize
+ * cheapest assignments (the restricted candidate list). The state is then
+ * improved by local search: the swaps of two places are scanned, and each
+ * swap that lowers the cost is taken at once (first improvement), until a
+ * full scan finds none. The best local optimum of all iterations is the
+ * result. Unlike simulated annealing there is no temperature schedule to
+ * tune: rclsize 1 is plain greedy, larger values give more variety.
+ *
+ * The iterations are independent, so the workers share nothing but a
+ * counter of iterations handed out and the best result. Each worker has a
+ * private copy of the problem and its own random generator. The best result
+ * is an immutable holder that is replaced by compare-and-set, as in the
+ * ParallelBreadthFirstSearchTechnique.
+ *
+ * With an elite pool, each local optimum is offered to the pool, and then
+ * relinked to a random member of it: the best state on the path from one
+ * to the other is improved by local search too, reported and offered
+ * (GRASP with path relinking, Resende and Ribeiro). The pool may be shared
+ * with other runs, so good solutions of earlier runs can guide later ones.
+ * @author kaper
+ *
+ */
+public class GraspTechnique implements Technique {
+
+	private int iterations;    //number of constructions to do
+	private int rclsize;       //length of the restricted candidate list
+	private int threads;       //number of worker threads
+	private AtomicInteger started;  //number of iterations handed out
+	private AtomicLong swapcount;   //number of improving swaps done
+	private AtomicReference<Best> best; //best local optimum found up to now
+	private ElitePool elites;       //pool of elite solutions, or null
+	private AtomicLong relinkcount; //number of path relinkings done
+	private static final long UNKNOWNCOST = 99999;
+	private static final int ELITEDISTANCE = 3;  //minimum number of A's in which elites differ
+	private LocalSearchProblem p;   //the problem to solve ! only copies are searched
+	private volatile boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Immutable record of the best state, its cost and the iteration that
+	 * found it
+	 */
+	private static class Best {
+		final long cost;
+		final State state;
+		final int iteration;
+
+		Best(long cost, State state, int iteration) {
+			this.cost = cost;
+			this.state = state;
+			this.iteration = iteration;
+		}//end constructor
+	}//end class Best
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param iterations, number of constructions followed by local search
+	 * @param rclsize, number of cheapest assignments to choose from
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 */
+	public GraspTechnique(LocalSearchProblem p, int iterations, int rclsize, int threads) {
+		this(p, iterations, rclsize, threads, 0);
+	}//end constructor
+
+	/**
+	 * Constructor of the technique, with path relinking
+	 * @param p, the problem to solve
+	 * @param iterations, number of constructions followed by local search
+	 * @param rclsize, number of cheapest assignments to choose from
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 * @param elitesize, size of the elite pool, 0 for none
+	 */
+	public GraspTechnique(
+		LocalSearchProblem p, int iterations, int rclsize, int threads, int elitesize
+	) {
+		this.p = p;
+		this.iterations = iterations;
+		this.rclsize = Math.max(1, rclsize);
+		this.threads = Math.max(1, threads);
+		this.started = new AtomicInteger(0);
+		this.swapcount = new AtomicLong(0);
+		this.best = new AtomicReference<Best>(new Best(UNKNOWNCOST, null, 0));
+		this.elites = (elitesize > 0) ? new ElitePool(p, elitesize, ELITEDISTANCE) : null;
+		this.relinkcount = new AtomicLong(0);
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		Random seeds = new Random();
+		try {
+			//a plain greedy start; it also lets the copies share derived data
+			p.initRandomizedGreedyState(seeds, 1);
+		} catch (Exception e) {
+			e.printStackTrace();
+			running = false;
+			return;
+		}
+		List<Worker> workers = new ArrayList<Worker>(threads);
+		for (int w=0; w<threads; w++) {
+			workers.add(new Worker(seeds.nextLong()));
+		}//next w
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new AllTask(workers));
+		} finally {
+			pool.shutdown();
+		}
+		//for debugging, comment out in production
+		System.out.println("iterations: "+Math.min(started.get(), iterations));
+		System.out.println("improving swaps: "+swapcount.get());
+		System.out.println("best cost: "+best.get().cost);
+		System.out.println();
+		running = false;
+	}//end run
+
+	/**
+	 * Runs all workers
+	 */
+	private static class AllTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Worker> workers;
+
+		AllTask(List<Worker> workers) {
+			this.workers = workers;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			invokeAll(workers);
+		}//end compute
+	}//end class AllTask
+
+	/**
+	 * A worker takes iterations from the shared counter until all are done
+	 */
+	private class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private LocalSearchProblem q; //private copy of the problem
+		private Random random;        //private, Random is not fast when shared
+
+		Worker(long seed) {
+			this.q = (LocalSearchProblem) p.problemClone();
+			this.random = new Random(seed);
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			int iteration;
+			while (running && (iteration = started.getAndIncrement()) < iterations) {
+				try {
+					q.initRandomizedGreedyState(random, rclsize);
+				} catch (Exception e) {
+					e.printStackTrace();
+					return; //no goal state exists, nor will another worker find one
+				}
+				long cost = localSearch(q);
+				report(q, cost, iteration);
+				if (elites == null)
+					continue;
+				elites.offer(q, cost);
+				ElitePool.Elite guide = elites.draw(random);
+				if (guide == null)
+					continue;
+				elites.relink(q, cost, guide);
+				relinkcount.incrementAndGet();
+				cost = localSearch(q);
+				report(q, cost, iteration);
+				elites.offer(q, cost);
+			}//end while
+		}//end compute
+
+	}//end class Worker
+
+	/**
+	 * First improvement local search over all swaps of two places
+	 * @param q, problem copy in a goal state, is changed into a local optimum
+	 * @return the cost of the local optimum
+	 */
+	private long localSearch(LocalSearchProblem q) {
+		int n = q.getNumberOfPlaces();
+		long cost = q.getCost();
+		long swaps = 0;
+		boolean improved = true;
+		while (improved && running) {
+			improved = false;
+			for (int i=0; i<n; i++) {
+				for (int j=i+1; j<n; j++) {
+					//within a B a swap changes nothing
+					if (q.getBOfPlace(i) == q.getBOfPlace(j) || !q.planSwap(i, j))
+						continue;
+					long delta = q.getDeltaCostRandomMove();
+					if (delta < 0) {
+						q.acceptMove();
+						cost += delta;
+						swaps++;
+						improved = true;
+					}//end if
+				}//next j
+			}//next i
+		}//end while
+		swapcount.addAndGet(swaps);
+		return cost;
+	}//end localSearch
+
+	/**
+	 * Report a local optimum; it replaces the best one if it is cheaper
+	 * @param q, problem copy that is in the local optimum
+	 * @param cost, its cost
+	 * @param iteration, the iteration that found it
+	 */
+	private void report(LocalSearchProblem q, long cost, int iteration) {
+		Best b = best.get();
+		if (cost >= b.cost && b.state != null)
+			return; //the usual case: no clone, no write
+		Best mine = new Best(cost, q.getState().stateClone(), iteration);
+		while (cost < b.cost || b.state == null) {
+			if (best.compareAndSet(b, mine))
+				return;
+			b = best.get();
+		}//end while
+	}//end report
+
+	//getters and setters for interaction with the UI
+
+	public int getIteration() {
+		return Math.min(started.get(), iterations);
+	}//end getIteration
+
+	public long getSwapCount() {
+		return swapcount.get();
+	}//end getSwapCount
+
+	public long getBestCost() {
+		return best.get().cost;
+	}//end getBestCost
+
+	public int getBestIteration() {
+		return best.get().iteration;
+	}//end getBestIteration
+
+	public long getRelinkCount() {
+		return relinkcount.get();
+	}//end getRelinkCount
+
+	/**
+	 * @return the elite pool, or null if there is none
+	 */
+	public ElitePool getElitePool() {
+		return elites;
+	}//end getElitePool
+
+	/**
+	 * Use another elite pool, e.g. one of an earlier run, before calling run
+	 * @param elites, the pool, for the same problem
+	 */
+	public void setElitePool(ElitePool elites) {
+		this.elites = elites;
+	}//end setElitePool
+
+	/**
+	 * The workers each inspect a different state, so there is no single
+	 * current state. We show the best one instead.
+	 */
+	public State getCurrentState() {
+		return getBestState();
+	}//end getCurrentState
+
+	public State getBestState() {
+		return best.get().state;  //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		Best b = best.get();
+		String txt = "";
+		txt += "bestcost: "+b.cost+"\n";
+		txt += "found in iteration: "+b.iteration+"\n";
+		if (b.state == null)
+			return txt;
+		p.setState(b.state); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"iteration", "swapcount", "relinkcount", "elites", "bestcost", "bestiteration"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		Best b = best.get();
+		return new String[] {
+			String.valueOf(getIteration()),
+			String.valueOf(swapcount.get()),
+			String.valueOf(relinkcount.get()),
+			String.valueOf((elites == null) ? 0 : elites.size()),
+			String.valueOf(b.cost),
+			String.valueOf(b.iteration)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("iterations", true, InputType.POSITIVEINT),
+				new Parameter("rclsize", true, InputType.POSITIVEINT),
+				new Parameter("threads", true, InputType.POSITIVEINT),
+				new Parameter("elitesize", false, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
@@ -0,0 +1,85 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.StochasticOptimisationProblem;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Great deluge (Dueck). A move is accepted if the new energy stays below a
+ * water level, or if it lowers the energy. The level starts a margin above
+ * the energy of the initial state and falls by "rainspeed" every
+ * iteration, so the walk is squeezed towards low energies. When the level
+ * has fallen below the lowest energy seen, little more than improvements
+ * are accepted: that is the frozen stage.
+ * Like threshold accepting there is no exp and no random number per move.
+ * @author kaper
+ */
+public class GreatDelugeTechnique extends AcceptanceTechnique {
+
+	private double level;      //current water level
+	private double initiallevel; //starting value for the level
+	private double rainspeed;  //fall of the level per iteration
+
+	/**
+	 * Constructor
+	 * @param p, problem to solve
+	 * @param initialmargin, height of the initial level above the initial energy
+	 * @param rainspeed, fall of the level per iteration
+	 * @param maxtriesinvain, stop after how many unsuccesful tries
+	 * @throws Exception
+	 */
+	public GreatDelugeTechnique(
+		StochasticOptimisationProblem p, double initialmargin, double rainspeed,
+		int maxtriesinvain
+	) throws Exception {
+		super(p, maxtriesinvain);
+		this.initiallevel = energy + initialmargin;
+		this.level = initiallevel;
+		this.rainspeed = rainspeed;
+	}//end constructor
+
+	/**
+	 * Accept if the new energy is below the level, or lower than now
+	 */
+	protected boolean accept(long energychange) {
+		return energychange <= 0 || energy + energychange <= level;
+	}//end accept
+
+	protected void lowerControl() {
+		level -= rainspeed;
+	}//end lowerControl
+
+	protected boolean isFrozen() {
+		return level < bestenergy;
+	}//end isFrozen
+
+	protected String getControlName() {
+		return "level";
+	}//end getControlName
+
+	protected double getControl() {
+		return level;
+	}//end getControl
+
+	public double getLevel() {
+		return level;
+	}//end getLevel
+
+	public double getInitialLevel() {
+		return initiallevel;
+	}//end getInitialLevel
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parametersnames array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("initialmargin", true, InputType.FLOAT),
+				new Parameter("rainspeed", true, InputType.FLOAT),
+				new Parameter("maxtriesinvain", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
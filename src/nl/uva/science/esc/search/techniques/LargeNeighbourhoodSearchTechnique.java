@@ -0,0 +1,403 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Large neighbourhood search (Shaw) for the many to one matching problems.
+ * Random swaps, as in simulated annealing, hardly ever fix a misplacement
+ * in which a dozen A's would have to move around a few popular B's at
+ * once. Here, each round a few sets of B's are chosen (destroy): all the
+ * A's in their places are taken out, and put back in these places in the
+ * cheapest possible way (repair), which the problem solves exactly as an
+ * assignment problem. The repair never makes things worse, so the result
+ * is always kept.
+ *
+ * The B's of a set are chosen until they hold at least subsize A's, by one
+ * of three operators:
+ * - random: B's at random;
+ * - cluster: a random B, then each time the B that the A's in the set most
+ *   want to move to (the largest sum of the gains of moving there);
+ * - worst: as cluster, but starting from the B of an A that is badly off:
+ *   the one of a small random sample with the largest gap between its
+ *   current preference and its best one.
+ * Instead of one operator for all sets, there are two ways to combine them:
+ * - mixed: the three in turn;
+ * - adaptive: the one that lowered the cost most per unit of time lately,
+ *   as chosen by an AdaptiveOperatorSelector; the sets of one round get
+ *   different ones, in order of score.
+ * The sets of one round are disjoint, so they only touch their own places,
+ * and are repaired in parallel on a fork/join pool.
+ * @author kaper
+ *
+ */
+public class LargeNeighbourhoodSearchTechnique implements Technique {
+
+	private int rounds;        //number of rounds to do
+	private int subsize;       //number of A's to take out per set
+	private String selection;  //how to choose the B's of a set
+	private int maxroundsinvain; //stop after this many rounds without improvement
+	private int threads;       //number of sets per round, and worker threads
+	private int round;         //round being done
+	private long cost;         //cost of the current state
+	private int bestround;     //round of the last improvement
+	private long subproblems;  //number of sets repaired
+	private long improvements; //number of repairs that lowered the cost
+	private int numberOfBs;
+	private long[] bestpreference; //for each A: its best preference over all B's
+	private Random random;
+	private AdaptiveOperatorSelector selector; //for the adaptive selection, or null
+	private ManyToOneMatchingProblem p;   //the problem to solve !
+	private volatile boolean running;   //we can stop the process by setting this to no
+
+	public static final String SELECTRANDOM = "random";
+	public static final String SELECTCLUSTER = "cluster";
+	public static final String SELECTWORST = "worst";
+	public static final String SELECTMIXED = "mixed";
+	public static final String SELECTADAPTIVE = "adaptive";
+	private static final String[] OPERATORS = {SELECTRANDOM, SELECTCLUSTER, SELECTWORST};
+	private static final int OPERATORWINDOW = 50;   //uses per operator that count
+	private static final double OPERATOREXPLORE = 0.5;
+	private static final int WORSTSAMPLE = 8;  //A's to look at for a bad off one
+
+	/**
+	 * Constructor, puts the problem in its initial goal state
+	 * @param p, the problem to solve
+	 * @param rounds, number of rounds to do
+	 * @param subsize, number of A's to take out per set of B's
+	 * @param selection, SELECTRANDOM, SELECTCLUSTER, SELECTWORST, SELECTMIXED
+	 *    or SELECTADAPTIVE
+	 * @param maxroundsinvain, stop after this many rounds without improvement
+	 * @param threads, number of disjoint sets per round, e.g. the number of cores
+	 * @throws Exception
+	 */
+	public LargeNeighbourhoodSearchTechnique(
+		ManyToOneMatchingProblem p, int rounds, int subsize, String selection,
+		int maxroundsinvain, int threads
+	) throws Exception {
+		this.p = p;
+		this.p.initGoalState();
+		this.rounds = rounds;
+		this.subsize = Math.max(1, subsize);
+		this.selection = selection;
+		this.maxroundsinvain = maxroundsinvain;
+		this.threads = Math.max(1, threads);
+		this.numberOfBs = p.getNumberOfBs();
+		this.bestpreference = new long[p.getNumberOfAs()];
+		for (int a=0; a<bestpreference.length; a++) {
+			bestpreference[a] = p.getPreference(a, 0);
+			for (int b=1; b<numberOfBs; b++) {
+				bestpreference[a] = Math.min(bestpreference[a], p.getPreference(a, b));
+			}//next b
+		}//next a
+		this.random = new Random();
+		this.selector = SELECTADAPTIVE.equals(selection) ?
+				new AdaptiveOperatorSelector(OPERATORS, OPERATORWINDOW, OPERATOREXPLORE) : null;
+		this.round = 0;
+		this.cost = p.getCost();
+		this.bestround = 0;
+		this.subproblems = 0;
+		this.improvements = 0;
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		List<Repair> repairs = new ArrayList<Repair>(threads);
+		for (int t=0; t<threads; t++) {
+			repairs.add(new Repair());
+		}//next t
+		boolean[] taken = new boolean[numberOfBs]; //B's in a set of this round
+		long[] gain = new long[numberOfBs];        //scratch for the cluster choice
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		int subproblem = 0;  //for the mixed selection
+		int[] chosen = new int[threads]; //operators of a round, for the adaptive selection
+		try {
+			for (round=1; round<=rounds && running
+					&& round <= bestround + maxroundsinvain; round++) {
+				//destroy: choose disjoint sets of B's
+				Arrays.fill(taken, false);
+				List<Repair> tasks = new ArrayList<Repair>(threads);
+				if (selector != null) {
+					//all at once: the rewards of this round are not in yet
+					selector.select(random, chosen, threads);
+				}
+				for (Repair r : repairs) {
+					String kind = selection;
+					if (SELECTMIXED.equals(kind)) {
+						kind = OPERATORS[subproblem % OPERATORS.length];
+					}
+					else if (selector != null) {
+						r.operator = chosen[tasks.size()];
+						kind = OPERATORS[r.operator];
+					}//end if
+					subproblem++;
+					long start = System.nanoTime();
+					r.count = choose(kind, taken, gain, r.bs);
+					r.nanos = System.nanoTime() - start;
+					if (r.count < 2)
+						break; //too few B's left for another useful set
+					r.reinitialize();
+					tasks.add(r);
+				}//next r
+				if (tasks.isEmpty())
+					break;
+				//repair them, in parallel
+				pool.invoke(new RoundTask(tasks));
+				long delta = 0;
+				for (Repair r : tasks) {
+					delta += r.delta;
+					subproblems++;
+					if (r.delta < 0)
+						improvements++;
+					if (selector != null)
+						selector.reward(r.operator, -r.delta, r.nanos);
+				}//next r
+				if (delta < 0) {
+					cost += delta;
+					bestround = round;
+				}//end if
+				//for debugging, comment out in production
+				if (round % 100 == 0) {
+					System.out.println("round: "+round);
+					System.out.println("cost: "+cost);
+					System.out.println("improvements: "+improvements);
+					System.out.println("bestround: "+bestround);
+					System.out.println();
+				}//end if
+			}//next round
+			round--; //the last one that was done
+		} finally {
+			pool.shutdown();
+		}
+		running = false;
+	}//end run
+
+	/**
+	 * Choose a set of B's that are not taken yet, and mark them taken
+	 * @param kind, SELECTRANDOM, SELECTCLUSTER or SELECTWORST
+	 * @param taken, for each B: is it in a set already? is updated
+	 * @param gain, scratch array, one per B
+	 * @param bs, to write the B's of the set in
+	 * @return number of B's in the set
+	 */
+	private int choose(String kind, boolean[] taken, long[] gain, int[] bs) {
+		int count = 0;
+		int freed = 0;  //number of A's in the set
+		int seed = -1;
+		if (SELECTWORST.equals(kind)) {
+			long worstgap = -1;
+			int n = p.getNumberOfPlaces();
+			for (int k=0; k<WORSTSAMPLE; k++) {
+				int j = random.nextInt(n);
+				int a = p.getAInPlace(j);
+				int b = p.getBOfPlace(j);
+				if (a == -1 || taken[b])
+					continue;
+				long gap = p.getPreference(a, b) - bestpreference[a];
+				if (gap > worstgap) {
+					worstgap = gap;
+					seed = b;
+				}
+			}//next k
+		}//end if
+		if (seed == -1)
+			seed = randomFreeB(taken);
+		while (seed != -1) {
+			taken[seed] = true;
+			bs[count++] = seed;
+			for (int j=p.getFirstPlaceOfB(seed); j<p.getFirstPlaceOfB(seed+1); j++) {
+				if (p.getAInPlace(j) != -1)
+					freed++;
+			}//next j
+			if (freed >= subsize && count >= 2)
+				break;
+			seed = SELECTRANDOM.equals(kind) ? randomFreeB(taken) : mostWantedB(taken, gain, bs, count);
+		}//end while
+		return count;
+	}//end choose
+
+	/**
+	 * @return a random B that is not taken, or -1 if there is none
+	 */
+	private int randomFreeB(boolean[] taken) {
+		int b = random.nextInt(numberOfBs);
+		for (int k=0; k<numberOfBs; k++) {
+			if (!taken[b])
+				return b;
+			b = (b + 1 == numberOfBs) ? 0 : b + 1;
+		}//next k
+		return -1;
+	}//end randomFreeB
+
+	/**
+	 * The B, not taken yet, that the A's in the set gain most by moving to
+	 * @return the B, a random free one if no A gains, -1 if none is free
+	 */
+	private int mostWantedB(boolean[] taken, long[] gain, int[] bs, int count) {
+		Arrays.fill(gain, 0);
+		for (int k=0; k<count; k++) {
+			for (int j=p.getFirstPlaceOfB(bs[k]); j<p.getFirstPlaceOfB(bs[k]+1); j++) {
+				int a = p.getAInPlace(j);
+				if (a == -1)
+					continue;
+				long now = p.getPreference(a, bs[k]);
+				for (int b=0; b<numberOfBs; b++) {
+					long g = now - p.getPreference(a, b);
+					if (g > 0 && !taken[b])
+						gain[b] += g;
+				}//next b
+			}//next j
+		}//next k
+		int best = -1;
+		for (int b=0; b<numberOfBs; b++) {
+			if (gain[b] > 0 && (best == -1 || gain[b] > gain[best]))
+				best = b;
+		}//next b
+		return (best != -1) ? best : randomFreeB(taken);
+	}//end mostWantedB
+
+	/**
+	 * Runs the repairs of one round
+	 */
+	private static class RoundTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Repair> tasks;
+
+		RoundTask(List<Repair> tasks) {
+			this.tasks = tasks;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}//end compute
+	}//end class RoundTask
+
+	/**
+	 * The repair of one set of B's; the same objects are used every round
+	 */
+	private class Repair extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		int[] bs = new int[numberOfBs];  //the set
+		int count;                       //number of B's in it
+		long delta;                      //change in cost by the repair
+		int operator;                    //how the set was chosen, for the adaptive selection
+		long nanos;                      //time to choose and repair it
+
+		@Override
+		protected void compute() {
+			long start = System.nanoTime();
+			delta = p.reoptimizeBs(bs, count);
+			nanos += System.nanoTime() - start;
+		}//end compute
+	}//end class Repair
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+
+	public int getRound() {
+		return round;
+	}//end getRound
+
+	public long getCost() {
+		return cost;
+	}//end getCost
+
+	public int getBestRound() {
+		return bestround;
+	}//end getBestRound
+
+	public long getImprovements() {
+		return improvements;
+	}//end getImprovements
+
+	public State getCurrentState() {
+		return p.getState(); //take care to only read it
+	}//end getCurrentState
+
+	/**
+	 * The current state is never worse than any before it, so it is the best
+	 */
+	public State getBestState() {
+		return p.getState();
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		String[] properties = {"round", "cost", "subproblems", "improvements", "bestround"};
+		if (selector == null)
+			return properties;
+		return join(properties, selector.advertiseSimpleProperties());
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		String[] values = {
+			String.valueOf(round),
+			String.valueOf(cost),
+			String.valueOf(subproblems),
+			String.valueOf(improvements),
+			String.valueOf(bestround)
+		};
+		if (selector == null)
+			return values;
+		return join(values, selector.simplePropertyValues());
+	}//end simplePropertyValues
+
+	/**
+	 * @return the elements of two arrays, in one array
+	 */
+	private static String[] join(String[] first, String[] second) {
+		String[] both = new String[first.length + second.length];
+		System.arraycopy(first, 0, both, 0, first.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+		return both;
+	}//end join
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("rounds", true, InputType.POSITIVEINT),
+				new Parameter("subsize", true, InputType.POSITIVEINT),
+				new Parameter("selection", true, InputType.STRING),
+				new Parameter("maxroundsinvain", true, InputType.POSITIVEINT),
+				new Parameter("threads", false, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
@@ -0,0 +1,208 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Arrays;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.problems.StochasticOptimisationProblem;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Late acceptance hill climbing (Burke and Bykov). A random move is
+ * accepted if the new energy is not higher than the energy of the current
+ * state, or than the energy the current state had "historylength"
+ * iterations ago. So early in the run, when the energy falls quickly, moves
+ * that raise it are accepted freely; as the fall slows down the search
+ * turns into hill climbing by itself. The only parameter to tune is the
+ * history length: longer is slower, but finds better states.
+ *
+ * The history is a ring buffer of energies, indexed by the iteration
+ * modulo its length. An entry is only replaced by a lower energy, as in
+ * the later papers of Burke and Bykov; with the original rule of always
+ * replacing it, a long history lets the energy wander for a long time.
+ *
+ * The run stops after maxidle idle iterations in a row, or when the time
+ * budget is used up. An iteration is idle unless it finds a new best
+ * energy. A mere step down counts as idle: the history can let the search
+ * go up and down between the same energies forever, while a new best
+ * energy can only be found a limited number of times.
+ * @author kaper
+ */
+public class LateAcceptanceTechnique implements Technique {
+
+	private long energy;       //energy (cost) of the current state
+	private int iteration;     //counter of tries
+	private long bestenergy;   //lowest energy seen in this run up to now
+	private int bestiteration; //iteration in which best energy was seen
+	private int idle;          //iterations in a row without a new best energy
+	private State beststate;   //the state with the lowest energy
+	private long[] history;    //energy of the current state, historylength iterations back
+	private int maxidle;       //stop after this many idle iterations
+	private long timebudget;   //stop after this many milliseconds, 0: no limit
+	private long elapsed;      //milliseconds used up to now
+	private StochasticOptimisationProblem p;   //the problem to solve !
+	private boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Constructor
+	 * @param p, problem to solve
+	 * @param historylength, number of iterations to look back
+	 * @param maxidle, stop after this many iterations in a row without
+	 *    a new best energy
+	 * @param timebudget, stop after this many milliseconds, 0: no limit
+	 * @throws Exception
+	 */
+	public LateAcceptanceTechnique(
+		StochasticOptimisationProblem p, int historylength, int maxidle, long timebudget
+	) throws Exception {
+		this.p = p;
+		this.p.initGoalState();
+		this.history = new long[Math.max(1, historylength)];
+		this.maxidle = maxidle;
+		this.timebudget = timebudget;
+		iteration = 0;
+		bestiteration = 0;
+		idle = 0;
+		energy = p.getCost();
+		bestenergy = energy;
+		beststate = p.getState().stateClone();
+		elapsed = 0;
+		running = false;
+	}//end constructor
+
+	/**
+	 * Run the technique on the problem
+	 * This could best be run in a separate thread, as it involves lengthy
+	 * work.
+	 */
+	public void run() {
+		running = true;
+		long start = System.currentTimeMillis();
+		Arrays.fill(history, energy);
+		int v = 0;  //position in the history: iteration modulo its length
+		while (running && idle < maxidle) {
+			//get a proposal for a state change
+			p.generateRandomMove();
+			long newenergy = energy + p.getDeltaCostRandomMove();
+			//decide whether it will happen
+			idle++;
+			if (newenergy <= history[v] || newenergy <= energy) {
+				p.acceptMove();
+				energy = newenergy;
+				if (energy < bestenergy) {
+					bestenergy = energy;
+					bestiteration = iteration;
+					idle = 0;
+					beststate = p.getState().stateClone();
+				}//end if
+			}//end if
+			if (energy < history[v])
+				history[v] = energy; //never raised: the history can only fall
+			if (++v == history.length)
+				v = 0;
+			iteration++;
+			if ((iteration & 1023) == 0) {
+				elapsed = System.currentTimeMillis() - start;
+				if (timebudget > 0 && elapsed >= timebudget)
+					break;
+				//for debugging, comment out in production
+				if (iteration % 51200 == 0) {
+					System.out.println("energy: "+energy);
+					System.out.println("iteration: "+iteration);
+					System.out.println("bestenergy: "+bestenergy);
+					System.out.println("bestiteration: "+bestiteration);
+					System.out.println();
+				}//end if
+			}//end if
+		}//end while
+		elapsed = System.currentTimeMillis() - start;
+		p.setState(beststate.stateClone()); //leave the problem in the best state
+		energy = bestenergy;
+		running = false;
+	}//end run
+
+	//Below are functions for interacting with the running process
+	//They could be called by the user interface
+	//There is no threadsafety, so just reading is the safest!
+
+	public long getEnergy() {
+		return energy;
+	}//end getEnergy
+
+	public int getIteration() {
+		return iteration;
+	}//end getIteration
+
+	public long getBestenergy() {
+		return bestenergy;
+	}//end getBestenergy
+
+	public int getBestiteration() {
+		return bestiteration;
+	}//end getBestiteration
+
+	public long getElapsed() {
+		return elapsed;
+	}//end getElapsed
+
+	public State getCurrentState() {
+		return p.getState();
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"energy", "iteration", "bestenergy", "bestiteration", "elapsed"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(energy),
+			String.valueOf(iteration),
+			String.valueOf(bestenergy),
+			String.valueOf(bestiteration),
+			String.valueOf(elapsed)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("historylength", true, InputType.POSITIVEINT),
+				new Parameter("maxidle", true, InputType.POSITIVEINT),
+				new Parameter("timebudget", false, InputType.INT)
+				};
+	}//end advertiseParameters
+
+}//end class
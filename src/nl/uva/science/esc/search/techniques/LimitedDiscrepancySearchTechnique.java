@@ -0,0 +1,282 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Limited discrepancy search (Harvey and Ginsberg). The first move that the
+ * problem generates at a node is its first choice; taking any other move is
+ * a discrepancy. If the problem orders its moves well, good solutions
+ * deviate from that order in only a few places, while depth-first search
+ * only varies the moves near the bottom of the tree for a long time.
+ *
+ * So the tree is searched in iterations with a discrepancy budget of
+ * 0, 1, 2, ... In iteration k a path may contain at most k discrepancies,
+ * and a branch that can no longer reach k discrepancies before the deepest
+ * level is skipped: its leaves were visited in an earlier iteration. Within
+ * an iteration the search is depth-first, with the move stack and retreat
+ * protocol of the DepthFirstSearchTechnique. Branches that already cost as
+ * much as the best solution are cut off, which assumes that moves never
+ * lower the cost (true for the matching problems).
+ *
+ * When an iteration did not have to skip any move because of its budget,
+ * the whole tree has been searched and the best solution is optimal.
+ * @author kaper
+ *
+ */
+public class LimitedDiscrepancySearchTechnique implements Technique {
+
+	private int levels;          //number of levels to develop in the search tree
+	private int maxdiscrepancies; //highest budget to try
+	private int[] movevalues;    //stack of moves leading to the current node:
+	private int[] movepositions; //value and position of the move at each level
+	private int[] used;          //discrepancies on the path to the node at each level
+	private int[] tried;         //number of moves tried at the node at each level
+	private int discrepancy;     //budget of the current (or last) iteration
+	private long cost;           //cost of the current state
+	private long leafcount;      //how many goal states were investigated
+	private State beststate;     //solution with lowest cost up to now
+	private long bestcost;       //lowest cost found up to now
+	private int bestdiscrepancy; //budget of the iteration that found it
+	private boolean exhausted;   //was the whole tree searched?
+	private static final long UNKNOWNCOST = 99999;
+	private DeterministicSearchProblem p;   //the problem to solve !
+	private boolean running;     //we can stop the process by setting this to no
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 */
+	public LimitedDiscrepancySearchTechnique(DeterministicSearchProblem p, int levels) {
+		this(p, levels, levels);
+	}//end constructor
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param maxdiscrepancies, budget of the last iteration
+	 */
+	public LimitedDiscrepancySearchTechnique(
+		DeterministicSearchProblem p, int levels, int maxdiscrepancies
+	) {
+		this.p = p;
+		this.levels = levels;
+		this.maxdiscrepancies = maxdiscrepancies;
+		movevalues = new int[levels + 1];
+		movepositions = new int[levels + 1];
+		used = new int[levels + 1];
+		tried = new int[levels + 1];
+		discrepancy = 0;
+		cost = 0;
+		leafcount = 0;
+		beststate = null;  //initially there is no solution known
+		bestcost = UNKNOWNCOST;
+		bestdiscrepancy = 0;
+		exhausted = false;
+		running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		for (int k=0; k<=maxdiscrepancies && running; k++) {
+			discrepancy = k;
+			boolean limited = probe(k);
+			//for debugging, comment out in production
+			System.out.println("discrepancies: "+discrepancy);
+			System.out.println("leafcount: "+leafcount);
+			System.out.println("bestcost: "+bestcost);
+			System.out.println();
+			if (!limited && running) {
+				exhausted = true; //nothing was skipped: the tree is done
+				break;
+			}//end if
+		}//next k
+		running = false;
+	}//end run
+
+	/**
+	 * One iteration: depth-first search of the paths with at most k
+	 * discrepancies, of which the leaves have exactly k of them
+	 * @param k, the discrepancy budget
+	 * @return was any move skipped because it exceeds the budget?
+	 */
+	private boolean probe(int k) {
+		boolean limited = false;
+		int level = 0;
+		p.initState(); //the root should start without search history
+		cost = 0;
+		used[0] = 0;
+		tried[0] = 0;
+		if (p.goalTest(0)) {
+			if (k == 0)
+				goalFound();
+			return false;
+		}//end if
+		boolean ok = p.generateDeterministicMove(level);
+		while (running) {
+			if (ok) {
+				//a move other than the first one is a discrepancy
+				int d = used[level] + (tried[level] > 0 ? 1 : 0);
+				tried[level]++;
+				if (d > k) {
+					//so are all further moves of this node
+					limited = true;
+					ok = false;
+				}
+				else if (d + (levels - level - 1) < k) {
+					//its leaves have less than k discrepancies: visited before
+					ok = p.generateDeterministicMove(level);
+					continue;
+				}
+				else {
+					long newcost = cost + p.getDeltaCostDeterministicMove();
+					if (beststate != null && newcost >= bestcost) {
+						//bound: this branch can not lead to a better solution
+						ok = p.generateDeterministicMove(level);
+						continue;
+					}//end if
+					cost = newcost;
+					p.doForwardMove(movevalues, movepositions, level);
+					level++;
+					used[level] = d;
+					tried[level] = 0;
+					if (p.goalTest(level)) {
+						if (d == k)
+							goalFound(); //with less, it was found before
+						ok = false; //a leaf, so retreat
+					}
+					else if (level < levels) {
+						ok = p.generateDeterministicMove(level);
+						continue;
+					}
+					else ok = false; //deepest level to develop, retreat
+				}//end if
+			}//end if
+			//the node is out of moves: retreat, unless we are back at the root
+			if (level == 0)
+				break;
+			level--;
+			p.retreatMove(movevalues[level], movepositions[level]);
+			cost -= p.getDeltaCostDeterministicMove();
+			ok = p.generateDeterministicMove(level);
+		}//end while
+		return limited;
+	}//end probe
+
+	/**
+	 * The problem is in a goal state: remember it if it is the best one
+	 */
+	private void goalFound() {
+		leafcount++;
+		if (cost < bestcost || beststate == null) {
+			beststate = p.getState().stateClone();
+			bestcost = cost;
+			bestdiscrepancy = discrepancy;
+		}//end if
+	}//end goalFound
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+	//The run method is running in a different thread than the UI
+
+	public int getDiscrepancy() {
+		return discrepancy;
+	}//end getDiscrepancy
+
+	public long getLeafCount() {
+		return leafcount;
+	}//end getLeafCount
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public int getBestDiscrepancy() {
+		return bestdiscrepancy;
+	}//end getBestDiscrepancy
+
+	/**
+	 * @return was the whole tree searched, so that the best state is optimal?
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}//end isExhausted
+
+	public State getCurrentState() {
+		return p.getState(); //take care to only read it
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best goal state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		String txt = "";
+		txt += "bestcost: "+bestcost+"\n";
+		txt += "found with discrepancies: "+bestdiscrepancy+"\n";
+		if (beststate == null)
+			return txt + "no goal state found, stopped early or too few levels\n";
+		p.setState(beststate); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"discrepancy", "leafcount", "bestcost", "bestdiscrepancy", "exhausted"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(discrepancy),
+			String.valueOf(leafcount),
+			String.valueOf(bestcost),
+			String.valueOf(bestdiscrepancy),
+			String.valueOf(exhausted)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("maxdiscrepancies", false, InputType.INT)
+				};
+	}//end advertiseParameters
+
+}//end class
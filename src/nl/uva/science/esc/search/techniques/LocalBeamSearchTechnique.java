@@ -0,0 +1,383 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Stochastic local beam search (Russell and Norvig) for the many to one
+ * matching problems. The beam is k current states. Each round, every state
+ * gets a number of successors by random swaps, and the next beam is chosen
+ * from the successors together with the states themselves, so a round can
+ * not lose the best state. The choice is stochastic, to keep the beam from
+ * collapsing onto copies of one state: the best candidate is always kept,
+ * the others are won by binary tournaments among the candidates left.
+ *
+ * The states are places arrays in one int buffer, as in the
+ * GeneticTechnique, with a second buffer for the next beam. A successor is
+ * not a copy but a record of its parent and its swap, kept in primitive
+ * arrays, so a round does not allocate. Only the chosen ones are written
+ * to the other buffer. The successors are evaluated in parallel: each
+ * worker takes a part of the beam and has its own copy of the problem.
+ * @author kaper
+ *
+ */
+public class LocalBeamSearchTechnique implements Technique {
+
+	private int width;         //number of states in the beam (k)
+	private int successors;    //number of random successors per state
+	private int rounds;        //number of rounds to do
+	private int maxroundsinvain; //stop after this many rounds without a new best
+	private int threads;       //number of worker threads
+	private int round;         //round being done
+	private long bestenergy;   //lowest energy seen up to now
+	private int bestround;     //round in which it was seen
+	private State beststate;   //the state with the lowest energy
+	private long beammin;      //lowest energy in the beam
+	private long beammax;      //highest energy in the beam
+	private double beammean;   //average energy in the beam
+	private ManyToOneMatchingProblem p;   //the problem to solve !
+	private volatile boolean running;   //we can stop the process by setting this to no
+
+	//candidates for the next beam, per state first the state itself, then its successors
+	private int[] candparent;  //index of the state in the beam
+	private int[] candplace1;  //the swap, -1 for the state itself
+	private int[] candplace2;
+	private long[] candenergy;
+	private boolean[] taken;   //is the candidate in the next beam?
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param width, number of states in the beam
+	 * @param successors, number of random successors per state per round
+	 * @param rounds, number of rounds to do
+	 * @param maxroundsinvain, stop after this many rounds without a new best
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 */
+	public LocalBeamSearchTechnique(
+		ManyToOneMatchingProblem p, int width, int successors, int rounds,
+		int maxroundsinvain, int threads
+	) {
+		this.p = p;
+		this.width = Math.max(1, width);
+		this.successors = Math.max(1, successors);
+		this.rounds = rounds;
+		this.maxroundsinvain = maxroundsinvain;
+		this.threads = Math.max(1, threads);
+		this.round = 0;
+		this.bestround = 0;
+		this.beststate = null;
+		this.running = false;
+		int c = this.width * (this.successors + 1);
+		candparent = new int[c];
+		candplace1 = new int[c];
+		candplace2 = new int[c];
+		candenergy = new long[c];
+		taken = new boolean[c];
+	}//end constructor
+
+	public void run() {
+		running = true;
+		int n = p.getNumberOfPlaces();
+		int[] beam = new int[width * n];
+		int[] next = new int[width * n];
+		long[] energy = new long[width];
+		Random random = new Random();
+		//the first beam: the initial goal state and randomized greedy ones
+		try {
+			p.initGoalState();
+			p.copyPlaces(beam, 0);
+			energy[0] = p.getCost();
+			for (int i=1; i<width; i++) {
+				p.initRandomizedGreedyState(random, 5);
+				p.copyPlaces(beam, i * n);
+				energy[i] = p.getCost();
+			}//next i
+		} catch (Exception e) {
+			e.printStackTrace(); //no goal state exists
+			running = false;
+			return;
+		}
+		bestenergy = energy[0];
+		remember(beam, energy);
+		List<Worker> workers = new ArrayList<Worker>(threads);
+		int part = (width + threads - 1) / threads;
+		for (int w=0; w<threads; w++) {
+			workers.add(new Worker(Math.min(width, w * part),
+					Math.min(width, (w + 1) * part), random.nextLong()));
+		}//next w
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (round=1; round<=rounds && running
+					&& round <= bestround + maxroundsinvain; round++) {
+				for (Worker w : workers) {
+					w.reinitialize();
+					w.beam = beam;
+					w.energy = energy;
+				}//next w
+				pool.invoke(new RoundTask(workers));
+				choose(random);
+				//write the chosen ones to the other buffer
+				int k = 0;
+				for (int c=0; c<taken.length; c++) {
+					if (!taken[c])
+						continue;
+					System.arraycopy(beam, candparent[c] * n, next, k * n, n);
+					if (candplace1[c] != -1) {
+						int a = next[k * n + candplace1[c]];
+						next[k * n + candplace1[c]] = next[k * n + candplace2[c]];
+						next[k * n + candplace2[c]] = a;
+					}//end if
+					energy[k] = candenergy[c];
+					k++;
+				}//next c
+				int[] swap = beam;
+				beam = next;
+				next = swap;
+				remember(beam, energy);
+				//for debugging, comment out in production
+				if (round % 100 == 0) {
+					System.out.println("round: "+round);
+					System.out.println("beam energies: "+beammin+" - "+beammax);
+					System.out.println("bestenergy: "+bestenergy);
+					System.out.println("bestround: "+bestround);
+					System.out.println();
+				}//end if
+			}//next round
+			round--; //the last one that was done
+		} finally {
+			pool.shutdown();
+		}
+		p.setState(beststate.stateClone()); //leave the problem in the best state
+		running = false;
+	}//end run
+
+	/**
+	 * Choose the next beam among the candidates: the best one, and the
+	 * winners of binary tournaments among the ones left
+	 */
+	private void choose(Random random) {
+		int c = taken.length;
+		Arrays.fill(taken, false);
+		int best = 0;
+		for (int i=1; i<c; i++) {
+			if (candenergy[i] < candenergy[best])
+				best = i;
+		}//next i
+		taken[best] = true;
+		for (int k=1; k<width; k++) {
+			int i = nextFree(random.nextInt(c));
+			int winner = i;
+			if (c - k > 1) {
+				taken[i] = true; //the opponent should be another one
+				int j = nextFree(random.nextInt(c));
+				taken[i] = false;
+				if (candenergy[j] < candenergy[i])
+					winner = j;
+			}//end if
+			taken[winner] = true;
+		}//next k
+	}//end choose
+	
+	/**
+	 * @return the first candidate from i on (cyclic) that is not taken
+	 */
+	private int nextFree(int i) {
+		while (taken[i]) {
+			i = (i + 1 == taken.length) ? 0 : i + 1;
+		}//end while
+		return i;
+	}//end nextFree
+
+	/**
+	 * Compute the spread of the energies in the beam, and remember the best
+	 * state if it is the best up to now
+	 */
+	private void remember(int[] beam, long[] energy) {
+		int best = 0;
+		long sum = 0;
+		beammax = energy[0];
+		for (int i=0; i<width; i++) {
+			sum += energy[i];
+			if (energy[i] < energy[best])
+				best = i;
+			if (energy[i] > beammax)
+				beammax = energy[i];
+		}//next i
+		beammin = energy[best];
+		beammean = (double) sum / width;
+		if (beammin < bestenergy || beststate == null) {
+			bestenergy = beammin;
+			bestround = round;
+			p.setPlaces(beam, best * p.getNumberOfPlaces());
+			beststate = p.getState().stateClone();
+		}//end if
+	}//end remember
+
+	/**
+	 * Runs all workers of one round
+	 */
+	private static class RoundTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Worker> workers;
+
+		RoundTask(List<Worker> workers) {
+			this.workers = workers;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			invokeAll(workers);
+		}//end compute
+	}//end class RoundTask
+
+	/**
+	 * A worker makes the successors of a part of the beam, using its own
+	 * problem copy and random generator; it writes the candidate records of
+	 * its own states only
+	 */
+	private class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private ManyToOneMatchingProblem q; //private copy of the problem
+		private Random random;
+		private int from;    //first state of the beam to do
+		private int to;      //first state not to do
+		int[] beam;          //the beam (shared, only read)
+		long[] energy;       //and its energies
+
+		Worker(int from, int to, long seed) {
+			this.q = (ManyToOneMatchingProblem) p.problemClone();
+			this.random = new Random(seed);
+			this.from = from;
+			this.to = to;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			int n = q.getNumberOfPlaces();
+			for (int s=from; s<to; s++) {
+				q.setPlaces(beam, s * n);
+				int c = s * (successors + 1);
+				candparent[c] = s;
+				candplace1[c] = -1;
+				candenergy[c] = energy[s];
+				for (int m=1; m<=successors; m++) {
+					int i;
+					int j;
+					int tries = 0;
+					do { //a swap that changes something, if we can find one
+						i = random.nextInt(n);
+						j = random.nextInt(n);
+					} while ((q.getBOfPlace(i) == q.getBOfPlace(j) || !q.planSwap(i, j))
+							&& ++tries < 100);
+					candparent[c + m] = s;
+					if (tries == 100) {
+						candplace1[c + m] = -1; //a copy of the state then
+						candenergy[c + m] = energy[s];
+						continue;
+					}
+					candplace1[c + m] = i;
+					candplace2[c + m] = j;
+					candenergy[c + m] = energy[s] + q.getDeltaCostRandomMove();
+				}//next m
+			}//next s
+			beam = null; //do not keep it alive
+		}//end compute
+	}//end class Worker
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+
+	public int getRound() {
+		return round;
+	}//end getRound
+
+	public long getBestEnergy() {
+		return bestenergy;
+	}//end getBestEnergy
+
+	public int getBestRound() {
+		return bestround;
+	}//end getBestRound
+
+	public long getBeamSpread() {
+		return beammax - beammin;
+	}//end getBeamSpread
+
+	/**
+	 * The beam is not a single state; we show the best one instead.
+	 */
+	public State getCurrentState() {
+		return beststate;
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"round", "beammin", "beammean", "beammax", "beamspread", "bestenergy", "bestround"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(round),
+			String.valueOf(beammin),
+			String.valueOf(beammean),
+			String.valueOf(beammax),
+			String.valueOf(beammax - beammin),
+			String.valueOf(bestenergy),
+			String.valueOf(bestround)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("width", true, InputType.POSITIVEINT),
+				new Parameter("successors", true, InputType.POSITIVEINT),
+				new Parameter("rounds", true, InputType.POSITIVEINT),
+				new Parameter("maxroundsinvain", true, InputType.POSITIVEINT),
+				new Parameter("threads", false, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
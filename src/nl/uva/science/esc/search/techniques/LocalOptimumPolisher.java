@@ -0,0 +1,239 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+
+/**
+ * Final stage for any stochastic technique on a many to one matching
+ * problem: steepest descent from its result to a local optimum for swaps,
+ * with a certificate. When simulated annealing freezes there are often
+ * still improving swaps left; after polishing there are none, and that
+ * has been checked.
+ *
+ * Each round all pairs of places are scanned in parallel, in chunks of
+ * places on a fork/join pool; for each place the best improving swap with
+ * another place is kept (a swap with an empty place is a relocation of an
+ * A). Then the kept swaps are done, best first, skipping those that touch
+ * a place that was already changed in this round. The cost is a sum over
+ * the A's, so the swaps done in a round do not change each other's gains.
+ * The rounds go on until a scan finds no improving swap: the state is then
+ * a certified 2-swap local optimum.
+ *
+ * The restricted scan only looks at the places of the B's that the A in a
+ * place prefers over its own B. Any improving swap has an A that gains by
+ * it, and it is found from that A's place, so the certificate holds for it
+ * as well, while it scans far fewer pairs than the full one.
+ * @author kaper
+ *
+ */
+public class LocalOptimumPolisher {
+
+	private ManyToOneMatchingProblem p;  //the problem, its current state is polished
+	private boolean restricted;  //scan only the candidate pairs?
+	private int threads;       //number of threads for the scans
+	private int n;             //number of places
+	private int numberOfBs;
+	private int[] bestpartner; //for each place: the place of its best swap, or -1
+	private long[] bestdelta;  //and the change in cost it gives
+	private AtomicLong pairs;  //number of pairs looked at in a round
+	private int rounds;        //number of rounds done
+	private long swaps;        //number of swaps done
+	private long costbefore;   //cost before polishing
+	private long cost;         //cost after polishing
+	private long lastscan;     //number of pairs looked at by the last, certifying, round
+	private boolean certified; //is it a local optimum?
+	private static final int MINCHUNK = 16;  //places per fork/join task, at least
+
+	/**
+	 * Constructor
+	 * @param p, the problem, in the goal state to polish
+	 * @param restricted, scan only the pairs in which an A gains?
+	 * @param threads, number of threads for the scans
+	 */
+	public LocalOptimumPolisher(ManyToOneMatchingProblem p, boolean restricted, int threads) {
+		this.p = p;
+		this.restricted = restricted;
+		this.threads = Math.max(1, threads);
+		this.n = p.getNumberOfPlaces();
+		this.numberOfBs = p.getNumberOfBs();
+		this.bestpartner = new int[n];
+		this.bestdelta = new long[n];
+		this.pairs = new AtomicLong(0);
+		this.rounds = 0;
+		this.swaps = 0;
+		this.certified = false;
+	}//end constructor
+
+	/**
+	 * Polish the current state of the problem
+	 * @return whether it is now a certified local optimum, which it is when
+	 *    the descent ends
+	 */
+	public boolean polish() {
+		costbefore = p.getCost();
+		cost = costbefore;
+		certified = false;
+		long[] order = new long[n];
+		boolean[] used = new boolean[n];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			while (!certified) {
+				pairs.set(0);
+				pool.invoke(new Scan(0, n));
+				rounds++;
+				//the improving swaps, best first: delta * n + place sorts on delta
+				int count = 0;
+				for (int i=0; i<n; i++) {
+					if (bestpartner[i] != -1)
+						order[count++] = bestdelta[i] * n + i;
+				}//next i
+				if (count == 0) {
+					certified = true;
+					lastscan = pairs.get();
+					break;
+				}
+				Arrays.sort(order, 0, count);
+				Arrays.fill(used, false);
+				for (int k=0; k<count; k++) {
+					int i = (int) (((order[k] % n) + n) % n);
+					int j = bestpartner[i];
+					if (used[i] || used[j])
+						continue;
+					p.planSwap(i, j);
+					p.acceptMove();
+					cost += bestdelta[i];
+					swaps++;
+					used[i] = true;
+					used[j] = true;
+				}//next k
+			}//end while
+		} finally {
+			pool.shutdown();
+		}
+		return certified;
+	}//end polish
+
+	/**
+	 * The change in cost of swapping the contents of two places, if allowed
+	 * @return the change, or 0 if the swap is not allowed
+	 */
+	private long delta(int i, int j) {
+		if (!p.isSwapAllowed(i, j))
+			return 0;
+		int ai = p.getAInPlace(i);
+		int aj = p.getAInPlace(j);
+		int bi = p.getBOfPlace(i);
+		int bj = p.getBOfPlace(j);
+		long delta = 0;
+		if (ai != -1)
+			delta += p.getPreference(ai, bj) - p.getPreference(ai, bi);
+		if (aj != -1)
+			delta += p.getPreference(aj, bi) - p.getPreference(aj, bj);
+		return delta;
+	}//end delta
+
+	/**
+	 * Finds the best improving swap for each place in a range, splitting it
+	 * in halves for the pool until the ranges are small; it only reads the
+	 * state, and writes the results for its own places only
+	 */
+	private class Scan extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int from;   //first place
+		private int to;     //first place not to do
+
+		Scan(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			int size = Math.max(MINCHUNK, n / (8 * threads));
+			if (to - from > size) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Scan(from, middle), new Scan(middle, to));
+				return;
+			}//end if
+			long looked = 0;
+			for (int i=from; i<to; i++) {
+				bestpartner[i] = -1;
+				bestdelta[i] = 0;
+				int ai = p.getAInPlace(i);
+				int bi = p.getBOfPlace(i);
+				if (restricted) {
+					//the places of the B's the A prefers: the swap partner may lose
+					if (ai == -1)
+						continue;
+					long now = p.getPreference(ai, bi);
+					for (int b=0; b<numberOfBs; b++) {
+						if (p.getPreference(ai, b) >= now)
+							continue;
+						for (int j=p.getFirstPlaceOfB(b); j<p.getFirstPlaceOfB(b+1); j++) {
+							consider(i, j);
+							looked++;
+						}//next j
+					}//next b
+				}
+				else {
+					//each pair once, in the lower place
+					for (int j=i+1; j<n; j++) {
+						if (p.getBOfPlace(j) != bi) {
+							consider(i, j);
+							looked++;
+						}
+					}//next j
+				}//end if
+			}//next i
+			pairs.addAndGet(looked);
+		}//end compute
+
+		/**
+		 * Keep the swap of i and j as the best one of i, if it is
+		 */
+		private void consider(int i, int j) {
+			long delta = delta(i, j);
+			if (delta < bestdelta[i]) {
+				bestdelta[i] = delta;
+				bestpartner[i] = j;
+			}
+		}//end consider
+	}//end class Scan
+
+	/**
+	 * Return a readable report of the polishing
+	 * @return the text
+	 */
+	public String showCertificate() {
+		String txt = "";
+		txt += "polishing rounds: "+rounds+", swaps: "+swaps+"\n";
+		txt += "cost: "+costbefore+" -> "+cost+"\n";
+		if (certified) {
+			txt += "certified 2-swap local optimum: no improving swap or relocation left ("
+				+ lastscan + (restricted ? " candidate" : "") + " pairs checked)\n";
+		}
+		else txt += "not certified\n";
+		return txt;
+	}//end showCertificate
+
+	public boolean isCertified() {
+		return certified;
+	}//end isCertified
+
+	public int getRounds() {
+		return rounds;
+	}//end getRounds
+
+	public long getSwaps() {
+		return swaps;
+	}//end getSwaps
+
+	public long getCost() {
+		return cost;
+	}//end getCost
+
+}//end class
@@ -0,0 +1,101 @@
+package nl.uva.science.esc.search.techniques;
+
+/**
+ * A set of long values, e.g. state hashes, without boxing.
+ * Open addressing with linear probing; the table doubles when half full.
+ * @author kaper
+ *
+ */
+public class LongHashSet {
+	private static final long FREE = 0; //marks an unused slot
+	
+	private long[] table; //slots, length is a power of two
+	private int size;     //number of values in the set, FREE not included
+	private boolean hasFree; //the value FREE itself is kept outside the table
+	
+	/**
+	 * Constructor
+	 * @param capacity, expected number of values
+	 */
+	public LongHashSet(int capacity) {
+		int n = 16;
+		while (n < 2 * capacity) 
+			n *= 2;
+		table = new long[n];
+		size = 0;
+		hasFree = false;
+	}//end constructor
+	
+	/**
+	 * Add a value
+	 * @param v, the value
+	 * @return true if the value was new, false if it was already present
+	 */
+	public boolean add(long v) {
+		if (v == FREE) {
+			boolean isnew = !hasFree;
+			hasFree = true;
+			return isnew;
+		}
+		int mask = table.length - 1;
+		int i = slot(v, mask);
+		while (table[i] != FREE) {
+			if (table[i] == v)
+				return false;
+			i = (i + 1) & mask;
+		}//end while
+		table[i] = v;
+		size++;
+		if (2 * size > table.length) 
+			rehash();
+		return true;
+	}//end add
+	
+	/**
+	 * Is the value in the set?
+	 * @param v, the value
+	 * @return presence
+	 */
+	public boolean contains(long v) {
+		if (v == FREE)
+			return hasFree;
+		int mask = table.length - 1;
+		int i = slot(v, mask);
+		while (table[i] != FREE) {
+			if (table[i] == v)
+				return true;
+			i = (i + 1) & mask;
+		}//end while
+		return false;
+	}//end contains
+	
+	/**
+	 * Double the table and put all values in their new slots
+	 */
+	private void rehash() {
+		long[] old = table;
+		table = new long[old.length * 2];
+		int mask = table.length - 1;
+		for (int j=0; j<old.length; j++) {
+			if (old[j] != FREE) {
+				int i = slot(old[j], mask);
+				while (table[i] != FREE) 
+					i = (i + 1) & mask;
+				table[i] = old[j];
+			}
+		}//next j
+	}//end rehash
+	
+	/**
+	 * First slot to try for a value
+	 */
+	private static int slot(long v, int mask) {
+		v *= 0x9e3779b97f4a7c15L;
+		return (int)(v ^ (v >>> 32)) & mask;
+	}//end slot
+	
+	public int size() {
+		return hasFree ? size + 1 : size;
+	}//end size
+	
+}//end class
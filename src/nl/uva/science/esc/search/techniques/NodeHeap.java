@@ -0,0 +1,120 @@
+package nl.uva.science.esc.search.techniques;
+
+/**
+ * Binary min-heap of node indices (e.g. into a SearchNodeArena), ordered by
+ * a long key. Ties are broken in favour of the higher tiebreak number, e.g.
+ * the deeper level, which brings us to goal states sooner.
+ * 
+ * Everything is kept in primitive arrays, so pushing and popping does not 
+ * create objects.
+ * @author kaper
+ *
+ */
+public class NodeHeap {
+	private int[] nodes;    //node indices, in heap order
+	private long[] keys;    //key of each node, same positions
+	private int[] ties;     //tiebreak of each node, same positions
+	private int size;       //number of nodes in the heap
+	
+	/**
+	 * Constructor
+	 * @param capacity, initial number of nodes to reserve space for
+	 */
+	public NodeHeap(int capacity) {
+		capacity = Math.max(capacity, 16);
+		nodes = new int[capacity];
+		keys = new long[capacity];
+		ties = new int[capacity];
+		size = 0;
+	}//end constructor
+	
+	/**
+	 * Add a node
+	 * @param node, index of the node
+	 * @param key, the lower the key, the sooner the node is popped
+	 * @param tie, among equal keys: the higher, the sooner
+	 */
+	public void push(int node, long key, int tie) {
+		if (size == nodes.length) {
+			int capacity = nodes.length * 2;
+			int[] nodes1 = new int[capacity];
+			long[] keys1 = new long[capacity];
+			int[] ties1 = new int[capacity];
+			System.arraycopy(nodes, 0, nodes1, 0, size);
+			System.arraycopy(keys, 0, keys1, 0, size);
+			System.arraycopy(ties, 0, ties1, 0, size);
+			nodes = nodes1;
+			keys = keys1;
+			ties = ties1;
+		}//end if
+		//sift up from the new leaf
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(key, tie, keys[parent], ties[parent]))
+				break;
+			nodes[i] = nodes[parent];
+			keys[i] = keys[parent];
+			ties[i] = ties[parent];
+			i = parent;
+		}//end while
+		nodes[i] = node;
+		keys[i] = key;
+		ties[i] = tie;
+	}//end push
+	
+	/**
+	 * Remove the node with the lowest key
+	 * @return index of the node
+	 */
+	public int pop() {
+		int top = nodes[0];
+		size--;
+		if (size > 0) {
+			//sift the last leaf down from the root
+			int node = nodes[size];
+			long key = keys[size];
+			int tie = ties[size];
+			int i = 0;
+			int child;
+			while ((child = 2 * i + 1) < size) {
+				if (child + 1 < size && 
+						before(keys[child+1], ties[child+1], keys[child], ties[child]))
+					child++;
+				if (!before(keys[child], ties[child], key, tie))
+					break;
+				nodes[i] = nodes[child];
+				keys[i] = keys[child];
+				ties[i] = ties[child];
+				i = child;
+			}//end while
+			nodes[i] = node;
+			keys[i] = key;
+			ties[i] = tie;
+		}//end if
+		return top;
+	}//end pop
+	
+	/**
+	 * @return key of the node that pop would return
+	 */
+	public long peekKey() {
+		return keys[0];
+	}//end peekKey
+	
+	/**
+	 * Should an element with key1 and tie1 go before key2, tie2?
+	 */
+	private static boolean before(long key1, int tie1, long key2, int tie2) {
+		return key1 < key2 || (key1 == key2 && tie1 > tie2);
+	}//end before
+	
+	public int size() {
+		return size;
+	}//end size
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}//end isEmpty
+	
+}//end class
@@ -0,0 +1,352 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Breadth-first exhaustive search, run on all cores of the machine.
+ *
+ * The search is level-synchronous: all nodes of one level are expanded
+ * before any node of the next. The nodes of a level are records of longs
+ * (cost, packed state), like in the BreadthFirstSearchTechnique, kept in one
+ * array. This array is cut in equal parts, one per worker. Each worker has
+ * a private copy of the problem and a private buffer to write the children
+ * to, so the workers share nothing while expanding. When the level is done,
+ * the buffers are concatenated into the array of the next level.
+ *
+ * Goal states are reported without locks: the best one is an immutable
+ * holder that is replaced by compare-and-set. A state is cloned only when it
+ * is better than the best one seen at that moment.
+ *
+ * Unlike the sequential technique, a level is kept in memory entirely.
+ * @author kaper
+ *
+ */
+public class ParallelBreadthFirstSearchTechnique implements Technique {
+
+	private int levels;        //number of levels to develop in the search tree
+	private int threads;       //number of worker threads
+	private int level;         //level being expanded
+	private long nodecount;    //how many nodes were generated, up to the last level
+	private long goalcount;    //how many goal states were examined, idem
+	private long levelsize;    //number of nodes in the level being expanded
+	private AtomicReference<Best> best; //best goal state found up to now
+	private static final long UNKNOWNCOST = 99999;
+	private DeterministicSearchProblem p;   //the problem to solve ! only copies are searched
+	private volatile boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Immutable pair of the best goal state and its cost
+	 */
+	private static class Best {
+		final long cost;
+		final State state;
+
+		Best(long cost, State state) {
+			this.cost = cost;
+			this.state = state;
+		}//end constructor
+	}//end class Best
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 */
+	public ParallelBreadthFirstSearchTechnique(
+		DeterministicSearchProblem p, int levels, int threads
+	) {
+		this.p = p;
+		this.levels = levels;
+		this.threads = Math.max(1, threads);
+		this.level = 0;
+		this.nodecount = 0;
+		this.goalcount = 0;
+		this.levelsize = 0;
+		this.best = new AtomicReference<Best>(new Best(UNKNOWNCOST, null));
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		p.initState(); //lets the copies share the problem's derived data
+		int recordsize = 1 + p.getPackedStateSize(); //cost, packed state
+		//the root node
+		long[] current = new long[recordsize];
+		current[0] = 0;
+		p.packState(current, 1);
+		levelsize = 1;
+		if (p.goalTest(0))
+			report(p, 0);
+		Worker[] workers = new Worker[threads];
+		for (int w=0; w<threads; w++) {
+			workers[w] = new Worker(recordsize);
+		}//next w
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (level=0; level<levels && levelsize>0 && running; level++) {
+				//give each worker an equal part of the level
+				List<Worker> tasks = new ArrayList<Worker>(threads);
+				long part = (levelsize + threads - 1) / threads;
+				for (int w=0; w<threads; w++) {
+					long from = Math.min(levelsize, w * part);
+					long to = Math.min(levelsize, from + part);
+					workers[w].reinitialize();
+					workers[w].prepare(current, (int) from, (int) to, level);
+					tasks.add(workers[w]);
+				}//next w
+				pool.invoke(new LevelTask(tasks));
+				//concatenate the children for the next level
+				long total = 0;
+				for (int w=0; w<threads; w++) {
+					total += workers[w].childcount;
+					nodecount += workers[w].generated;
+					goalcount += workers[w].goals;
+				}//next w
+				if (total * recordsize > Integer.MAX_VALUE)
+					throw new IllegalStateException(
+							"level " + (level + 1) + " has too many nodes: " + total);
+				long[] next = new long[(int) total * recordsize];
+				int pos = 0;
+				for (int w=0; w<threads; w++) {
+					int length = workers[w].childcount * recordsize;
+					System.arraycopy(workers[w].children, 0, next, pos, length);
+					pos += length;
+				}//next w
+				current = next;
+				levelsize = total;
+				//for debugging, comment out in production
+				System.out.println("level expanded: "+level);
+				System.out.println("nodes generated: "+nodecount);
+				System.out.println("goal states: "+goalcount);
+				System.out.println("best cost: "+best.get().cost);
+				System.out.println("next level size: "+levelsize);
+				System.out.println();
+			}//next level
+		} finally {
+			pool.shutdown();
+		}
+		running = false;
+	}//end run
+
+	/**
+	 * Runs all workers of one level
+	 */
+	private static class LevelTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Worker> tasks;
+
+		LevelTask(List<Worker> tasks) {
+			this.tasks = tasks;
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}//end compute
+	}//end class LevelTask
+
+	/**
+	 * A worker expands a part of a level, using its own problem copy and its
+	 * own child buffer. The same worker object is used for all levels.
+	 */
+	private class Worker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private DeterministicSearchProblem q; //private copy of the problem
+		private int recordsize;
+		private long[] parents;  //records of the level (shared, only read)
+		private int from;        //first record to expand
+		private int to;          //first record not to expand
+		private int parentlevel; //level of the records to expand
+		long[] children;         //buffer for the generated records
+		int childcount;          //number of records in it
+		long generated;          //number of nodes generated at this level
+		long goals;              //number of goal states found at this level
+		private int[] movevalue = new int[1];
+		private int[] moveposition = new int[1];
+
+		Worker(int recordsize) {
+			this.q = (DeterministicSearchProblem) p.problemClone();
+			this.recordsize = recordsize;
+			this.children = new long[64 * recordsize];
+		}//end constructor
+
+		/**
+		 * Set the part of the level to expand
+		 */
+		void prepare(long[] parents, int from, int to, int parentlevel) {
+			this.parents = parents;
+			this.from = from;
+			this.to = to;
+			this.parentlevel = parentlevel;
+			this.childcount = 0;
+			this.generated = 0;
+			this.goals = 0;
+		}//end prepare
+
+		@Override
+		protected void compute() {
+			int childlevel = parentlevel + 1;
+			boolean keep = childlevel < levels; //children of the last level are not expanded
+			for (int i=from; i<to && running; i++) {
+				int offset = i * recordsize;
+				long cost = parents[offset];
+				q.unpackState(parents, offset + 1, parentlevel);
+				boolean ok = q.generateDeterministicMove(parentlevel);
+				while (ok) {   //while the node is not out of moves
+					long newcost = cost + q.getDeltaCostDeterministicMove();
+					q.doForwardMove(movevalue, moveposition, 0);
+					generated++;
+					if (keep) {
+						if ((childcount + 1) * recordsize > children.length)
+							growChildren();
+						int c = childcount * recordsize;
+						children[c] = newcost;
+						q.packState(children, c + 1);
+						childcount++;
+					}//end if
+					if (q.goalTest(childlevel)) {
+						goals++;
+						report(q, newcost);
+					}//end if
+					q.retreatMove(movevalue[0], moveposition[0]); //backtrack to try next move
+					ok = q.generateDeterministicMove(parentlevel);
+				}//end while
+			}//next i
+			parents = null; //do not keep the level alive
+		}//end compute
+
+		/**
+		 * Double the size of the child buffer
+		 */
+		private void growChildren() {
+			long size = 2L * children.length;
+			if (size > Integer.MAX_VALUE)
+				size = (Integer.MAX_VALUE / recordsize) * recordsize;
+			if (size <= children.length)
+				throw new IllegalStateException("too many children for one worker");
+			long[] bigger = new long[(int) size];
+			System.arraycopy(children, 0, bigger, 0, childcount * recordsize);
+			children = bigger;
+		}//end growChildren
+
+	}//end class Worker
+
+	/**
+	 * Report a goal state; it replaces the best one if it is cheaper
+	 * @param q, problem copy that is in the goal state
+	 * @param cost, its cost
+	 */
+	private void report(DeterministicSearchProblem q, long cost) {
+		Best b = best.get();
+		if (cost >= b.cost && b.state != null)
+			return; //the usual case: no clone, no write
+		Best mine = new Best(cost, q.getState().stateClone());
+		while (cost < b.cost || b.state == null) {
+			if (best.compareAndSet(b, mine))
+				return;
+			b = best.get();
+		}//end while
+	}//end report
+
+	//getters and setters for interaction with the UI
+
+	public long getNodeCount() {
+		return nodecount;
+	}//end getNodeCount
+
+	public long getGoalCount() {
+		return goalcount;
+	}//end getGoalCount
+
+	public long getBestCost() {
+		return best.get().cost;
+	}//end getBestCost
+
+	public int getLevel() {
+		return level;
+	}//end getLevel
+
+	/**
+	 * The workers each inspect a different state, so there is no single
+	 * current state. We show the best one instead.
+	 */
+	public State getCurrentState() {
+		return getBestState();
+	}//end getCurrentState
+
+	public State getBestState() {
+		return best.get().state;  //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best goal state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		Best b = best.get();
+		String txt = "";
+		txt += "bestcost: "+b.cost+"\n";
+		p.setState(b.state); //the problem box will show it
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {"level", "levelsize", "nodecount", "goalcount", "bestcost"};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(level),
+			String.valueOf(levelsize),
+			String.valueOf(nodecount),
+			String.valueOf(goalcount),
+			String.valueOf(best.get().cost)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("threads", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
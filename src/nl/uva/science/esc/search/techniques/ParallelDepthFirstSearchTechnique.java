@@ -0,0 +1,289 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.*;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Depth-first branch-and-bound search, run on all cores of the machine.
+ *
+ * The tree is split at its shallow levels: each node above "splitlevels"
+ * becomes a task on a ForkJoinPool, forking one subtask per child. A task
+ * is only a path of Moves; it replays this path on a private copy of the
+ * problem. Below "splitlevels" a task searches its subtree depth-first, like
+ * the DepthFirstSearchTechnique. Workers that run out of tasks steal the
+ * unexplored siblings of the other workers (that is how a ForkJoinPool works).
+ *
+ * All workers share the best cost found up to now through an atomic. A
+ * branch is cut off as soon as its cost reaches the best cost, so a good
+ * solution found by one worker speeds up all of them. This assumes that
+ * moves never lower the cost, which is true for the matching problems.
+ * The optimum cost found is the same as that of the sequential search.
+ * @author kaper
+ */
+public class ParallelDepthFirstSearchTechnique implements Technique {
+
+	private int levels;        //number of levels to develop in the search tree
+	private int splitlevels;   //number of levels that are split into tasks
+	private int threads;       //number of worker threads
+	private AtomicLong leafcount;  //how many goal states were investigated
+	private AtomicLong taskcount;  //how many tasks were created
+	private AtomicLong bestcost;   //lowest cost found up to now, shared by all workers
+	private State beststate;   //solution with lowest cost up to now
+	private long beststatecost; //cost of beststate, guarded by the lock below
+	private final Object bestlock = new Object();
+	private static final long UNKNOWNCOST = Long.MAX_VALUE; //nothing is pruned until we know a cost
+	private DeterministicSearchProblem p;   //the problem to solve ! only copies are searched
+	private volatile boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Constructor of the technique
+	 * @param p, the problem to solve
+	 * @param levels, number of levels to develop in the search tree
+	 * @param splitlevels, number of levels at which to split into parallel tasks
+	 * @param threads, number of worker threads, e.g. the number of cores
+	 */
+	public ParallelDepthFirstSearchTechnique(
+		DeterministicSearchProblem p, int levels, int splitlevels, int threads
+	) {
+		this.p = p;
+		this.levels = levels;
+		this.splitlevels = Math.min(splitlevels, levels);
+		this.threads = threads;
+		leafcount = new AtomicLong(0);
+		taskcount = new AtomicLong(0);
+		bestcost = new AtomicLong(UNKNOWNCOST);
+		beststate = null;  //initially there is no solution known
+		beststatecost = UNKNOWNCOST;
+		running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		p.initState(); //lets the copies share the problem's derived data
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new SubtreeTask(new Move[0], 0));
+		} finally {
+			pool.shutdown();
+		}
+		running = false;
+	}//end run
+
+	/**
+	 * A task: search the subtree below the node that the Moves lead to
+	 */
+	private class SubtreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Move[] prefix;  //path from the root to the node
+		private long cost;      //cost of the node
+
+		SubtreeTask(Move[] prefix, long cost) {
+			this.prefix = prefix;
+			this.cost = cost;
+			taskcount.incrementAndGet();
+		}//end constructor
+
+		@Override
+		protected void compute() {
+			if (!running || cost >= bestcost.get())
+				return; //stopped, or meanwhile a better solution was found
+			//rebuild the node on a private copy of the problem
+			DeterministicSearchProblem q = (DeterministicSearchProblem) p.problemClone();
+			q.initState();
+			for (int i=0; i<prefix.length; i++) {
+				q.replayMove(prefix[i]);
+			}//next i
+			int level = prefix.length;
+			if (level < splitlevels && !q.goalTest(level)) {
+				//split: one subtask per child
+				List<SubtreeTask> subtasks = new ArrayList<SubtreeTask>();
+				boolean ok = q.generateDeterministicMove(level);
+				while (ok) {
+					long newcost = cost + q.getDeltaCostDeterministicMove();
+					Move m = q.doForwardMove();
+					if (newcost < bestcost.get()) {
+						Move[] path = new Move[level + 1];
+						System.arraycopy(prefix, 0, path, 0, level);
+						path[level] = m;
+						subtasks.add(new SubtreeTask(path, newcost));
+					}//end if
+					q.retreatMove(m);
+					ok = q.generateDeterministicMove(level);
+				}//end while
+				invokeAll(subtasks);
+			}
+			else {
+				searchSubtree(q, level, cost);
+			}//end if
+		}//end compute
+
+	}//end class SubtreeTask
+
+	/**
+	 * Sequential depth-first search of the subtree below the current node
+	 * of q, never retreating above that node
+	 * @param q, private problem copy, at the node to start from
+	 * @param base, level of that node
+	 * @param cost, cost of that node
+	 */
+	private void searchSubtree(DeterministicSearchProblem q, int base, long cost) {
+		if (q.goalTest(base)) {
+			goalFound(q, cost);
+			return;
+		}//end if
+		Deque<Move> movestack = new ArrayDeque<Move>(levels - base);
+		int level = base;
+		boolean ok = q.generateDeterministicMove(level);
+		while (running) {
+			if (ok) {
+				long newcost = cost + q.getDeltaCostDeterministicMove();
+				if (newcost >= bestcost.get()) {
+					//bound: this branch can not lead to a better solution
+					ok = q.generateDeterministicMove(level);
+					continue;
+				}//end if
+				cost = newcost;
+				movestack.push(q.doForwardMove());
+				level++;
+				if (q.goalTest(level)) {
+					goalFound(q, cost);
+					ok = false; //a leaf, so retreat
+				}
+				else if (level < levels) {
+					ok = q.generateDeterministicMove(level);
+					continue;
+				}
+				else ok = false; //deepest level to develop, retreat
+			}//end if
+			//the node is out of moves: retreat, unless we are back at the base
+			if (movestack.isEmpty())
+				break;
+			q.retreatMove(movestack.pop());
+			level--;
+			cost -= q.getDeltaCostDeterministicMove();
+			ok = q.generateDeterministicMove(level);
+		}//end while
+	}//end searchSubtree
+
+	/**
+	 * Register a goal state, and share its cost if it is the best one
+	 * @param q, problem copy that is in the goal state
+	 * @param cost, its cost
+	 */
+	private void goalFound(DeterministicSearchProblem q, long cost) {
+		leafcount.incrementAndGet();
+		long best = bestcost.get();
+		while (cost < best) {
+			if (bestcost.compareAndSet(best, cost)) {
+				State s = q.getState().stateClone();
+				synchronized (bestlock) {
+					//another worker may have stored an even better one meanwhile
+					if (cost < beststatecost) {
+						beststate = s;
+						beststatecost = cost;
+					}
+				}//end synchronized
+				return;
+			}//end if
+			best = bestcost.get();
+		}//end while
+	}//end goalFound
+
+	//getters and setters for interaction with the UI
+
+	public long getLeafCount() {
+		return leafcount.get();
+	}//end getLeafCount
+
+	public long getTaskCount() {
+		return taskcount.get();
+	}//end getTaskCount
+
+	public long getBestCost() {
+		return bestcost.get();
+	}//end getBestCost
+
+	/**
+	 * The workers each inspect a different state, so there is no single
+	 * current state. We show the best one instead.
+	 */
+	public State getCurrentState() {
+		return getBestState();
+	}//end getCurrentState
+
+	public State getBestState() {
+		synchronized (bestlock) {
+			return beststate;    //it's a clone and has only one goal: being read
+		}
+	}//end getBestState
+
+	/**
+	 * Return a readable description of the best goal state found
+	 * @return the text
+	 */
+	public String showBestState() {
+		String txt = "";
+		txt += "bestcost: "+bestcost.get()+"\n";
+		p.setState(getBestState());
+		txt += p.showState();
+		return txt;
+	}//end showBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {"leafcount", "taskcount", "bestcost"};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(leafcount.get()),
+			String.valueOf(taskcount.get()),
+			String.valueOf(bestcost.get())
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("levels", true, InputType.POSITIVEINT),
+				new Parameter("splitlevels", true, InputType.POSITIVEINT),
+				new Parameter("threads", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
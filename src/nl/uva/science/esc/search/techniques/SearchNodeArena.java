@@ -0,0 +1,95 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.search.problems.Move;
+
+/**
+ * Storage for the nodes of a search tree that is kept in memory as a whole.
+ * A node is not a saved State, but a compact record: a pointer to its parent
+ * node, the Move that leads from the parent to this node, its cost and level.
+ * The State of a node can be rebuilt by replaying the Moves on its path.
+ * 
+ * Nodes are identified by their index. The records live in parallel arrays
+ * that grow when needed, so adding a node does not create a node object.
+ * @author kaper
+ *
+ */
+public class SearchNodeArena {
+	public static final int NOPARENT = -1; //parent of the root node
+	
+	private int[] parent; //index of the parent node
+	private Move[] move;  //Move leading from the parent to this node
+	private long[] cost;  //cost of the path up to this node
+	private int[] level;  //level of this node in the tree
+	private int size;     //number of nodes stored
+	
+	/**
+	 * Constructor
+	 * @param capacity, initial number of nodes to reserve space for
+	 */
+	public SearchNodeArena(int capacity) {
+		capacity = Math.max(capacity, 16);
+		parent = new int[capacity];
+		move = new Move[capacity];
+		cost = new long[capacity];
+		level = new int[capacity];
+		size = 0;
+	}//end constructor
+	
+	/**
+	 * Add a node
+	 * @param parentnode, index of the parent, or NOPARENT for the root
+	 * @param m, Move from parent to the new node, null for the root
+	 * @param nodecost, cost of the new node
+	 * @param nodelevel, level of the new node
+	 * @return index of the new node
+	 */
+	public int add(int parentnode, Move m, long nodecost, int nodelevel) {
+		if (size == parent.length) 
+			grow();
+		parent[size] = parentnode;
+		move[size] = m;
+		cost[size] = nodecost;
+		level[size] = nodelevel;
+		return size++;
+	}//end add
+	
+	/**
+	 * Double the capacity of all arrays
+	 */
+	private void grow() {
+		int capacity = parent.length * 2;
+		int[] parent1 = new int[capacity];
+		Move[] move1 = new Move[capacity];
+		long[] cost1 = new long[capacity];
+		int[] level1 = new int[capacity];
+		System.arraycopy(parent, 0, parent1, 0, size);
+		System.arraycopy(move, 0, move1, 0, size);
+		System.arraycopy(cost, 0, cost1, 0, size);
+		System.arraycopy(level, 0, level1, 0, size);
+		parent = parent1;
+		move = move1;
+		cost = cost1;
+		level = level1;
+	}//end grow
+	
+	public int getParent(int node) {
+		return parent[node];
+	}//end getParent
+	
+	public Move getMove(int node) {
+		return move[node];
+	}//end getMove
+	
+	public long getCost(int node) {
+		return cost[node];
+	}//end getCost
+	
+	public int getLevel(int node) {
+		return level[node];
+	}//end getLevel
+	
+	public int size() {
+		return size;
+	}//end size
+	
+}//end class
@@ -0,0 +1,242 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Random;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.LocalSearchProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Tabu search (Glover). In each iteration a sample of the neighbourhood is
+ * evaluated: random swaps of two places, which are relocations if one of
+ * the places is empty. The best of them is taken, even if it raises the
+ * cost, so the search walks out of local optima. To keep it from walking
+ * straight back, an A that leaves a B may not return to it for the next
+ * "tenure" iterations. A tabu move is allowed anyway if it leads to a
+ * state better than the best one seen (aspiration). The sample should be
+ * large enough to find an improving swap most of the time when there is
+ * one, a few times the number of places, otherwise the walk drifts uphill.
+ *
+ * The tabu status is an array with, for each A,B pair, the iteration in
+ * which the pair stops being tabu; a check is one array lookup.
+ * The search stops after maxiterations, or after maxtriesinvain iterations
+ * without a new best state. The problem is then put in the best state.
+ * @author kaper
+ *
+ */
+public class TabuSearchTechnique implements Technique {
+
+	private long cost;         //cost of the current state
+	private int iteration;     //counter of moves made
+	private long bestcost;     //lowest cost seen in this run up to now
+	private int bestiteration; //iteration in which it was seen
+	private State beststate;   //the state with the lowest cost
+	private long aspirations;  //number of tabu moves taken for aspiration
+	private int maxiterations; //stop after this many moves
+	private int samplesize;    //number of swaps to evaluate per move
+	private int tenure;        //number of iterations a return is tabu
+	private int maxtriesinvain;//stop after this many moves without a new best
+	private int numberOfBs;
+	private int[] tabuuntil;   //for each A,B pair (A*numberOfBs+B): first iteration it is allowed
+	private Random random;
+	private LocalSearchProblem p;   //the problem to solve !
+	private boolean running;   //we can stop the process by setting this to no
+
+	/**
+	 * Constructor
+	 * @param p, problem to solve
+	 * @param maxiterations, stop after this many moves
+	 * @param samplesize, number of swaps to evaluate per move
+	 * @param tenure, number of iterations an A may not return to a B it left
+	 * @param maxtriesinvain, stop after this many moves without a new best
+	 * @throws Exception
+	 */
+	public TabuSearchTechnique(
+		LocalSearchProblem p, int maxiterations, int samplesize, int tenure,
+		int maxtriesinvain
+	) throws Exception {
+		this.p = p;
+		this.p.initGoalState();
+		this.maxiterations = maxiterations;
+		this.samplesize = Math.max(1, samplesize);
+		this.tenure = tenure;
+		this.maxtriesinvain = maxtriesinvain;
+		this.numberOfBs = p.getNumberOfBs();
+		this.tabuuntil = new int[p.getNumberOfAs() * numberOfBs];
+		this.random = new Random();
+		iteration = 0;
+		cost = p.getCost();
+		bestcost = cost;
+		bestiteration = 0;
+		beststate = p.getState().stateClone();
+		aspirations = 0;
+		running = false;
+	}//end constructor
+
+	/**
+	 * Run the technique on the problem
+	 * This could best be run in a separate thread, as it involves lengthy
+	 * work.
+	 */
+	public void run() {
+		running = true;
+		int n = p.getNumberOfPlaces();
+		while (
+			running && iteration < maxiterations
+			&& iteration < bestiteration + maxtriesinvain
+		) {
+			//find the best allowed swap in a sample of the neighbourhood
+			int move1 = -1;
+			int move2 = -1;
+			long movedelta = 0;
+			boolean moveaspires = false;
+			int tries = 0;
+			for (int k=0; k<samplesize && tries < 4 * samplesize; tries++) {
+				int i = random.nextInt(n);
+				int j = random.nextInt(n);
+				int bi = p.getBOfPlace(i);
+				int bj = p.getBOfPlace(j);
+				if (bi == bj || !p.planSwap(i, j))
+					continue; //no change, or not allowed
+				k++;
+				long delta = p.getDeltaCostRandomMove();
+				if (move1 != -1 && delta >= movedelta)
+					continue;
+				boolean tabu = isTabu(p.getAInPlace(i), bj) || isTabu(p.getAInPlace(j), bi);
+				boolean aspires = cost + delta < bestcost;
+				if (tabu && !aspires)
+					continue;
+				move1 = i;
+				move2 = j;
+				movedelta = delta;
+				moveaspires = tabu;
+			}//next k
+			iteration++;
+			if (move1 == -1)
+				continue; //all of the sample was tabu, try another one
+			//make the move, and forbid the way back
+			int a1 = p.getAInPlace(move1);
+			int a2 = p.getAInPlace(move2);
+			p.planSwap(move1, move2);
+			p.acceptMove();
+			cost += movedelta;
+			if (a1 != -1)
+				tabuuntil[a1 * numberOfBs + p.getBOfPlace(move1)] = iteration + tenure;
+			if (a2 != -1)
+				tabuuntil[a2 * numberOfBs + p.getBOfPlace(move2)] = iteration + tenure;
+			if (moveaspires)
+				aspirations++;
+			if (cost < bestcost) {
+				bestcost = cost;
+				bestiteration = iteration;
+				beststate = p.getState().stateClone();
+			}//end if
+			//for debugging, comment out in production
+			if (iteration % 10000 == 0) {
+				System.out.println("cost: "+cost);
+				System.out.println("iteration: "+iteration);
+				System.out.println("bestcost: "+bestcost);
+				System.out.println("bestiteration: "+bestiteration);
+				System.out.println();
+			}//end if
+		}//end while
+		p.setState(beststate.stateClone()); //leave the problem in the best state
+		cost = bestcost;
+		running = false;
+	}//end run
+
+	/**
+	 * Is it tabu to move A a into B b?
+	 * @param a, an A, or -1 for an empty place: never tabu
+	 */
+	private boolean isTabu(int a, int b) {
+		return a != -1 && tabuuntil[a * numberOfBs + b] > iteration;
+	}//end isTabu
+
+	//Below are functions for interacting with the running process
+	//They could be called by the user interface
+	//There is no threadsafety, so just reading is the safest!
+
+	public long getCost() {
+		return cost;
+	}//end getCost
+
+	public int getIteration() {
+		return iteration;
+	}//end getIteration
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public int getBestIteration() {
+		return bestiteration;
+	}//end getBestIteration
+
+	public long getAspirations() {
+		return aspirations;
+	}//end getAspirations
+
+	public State getCurrentState() {
+		return p.getState();
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"cost", "iteration", "bestcost", "bestiteration", "aspirations"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(cost),
+			String.valueOf(iteration),
+			String.valueOf(bestcost),
+			String.valueOf(bestiteration),
+			String.valueOf(aspirations)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("maxiterations", true, InputType.POSITIVEINT),
+				new Parameter("samplesize", true, InputType.POSITIVEINT),
+				new Parameter("tenure", true, InputType.POSITIVEINT),
+				new Parameter("maxtriesinvain", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
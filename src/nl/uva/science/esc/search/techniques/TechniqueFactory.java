@@ -36,10 +36,22 @@ public class TechniqueFactory {
 	//
 	//configuration of Technique subtypes!
 	private static final String[] typenames = { //Technique classname without "Technique"
-		"BreadthFirstSearch", "DepthFirstSearch", "SimulatedAnnealing"
+		"BreadthFirstSearch", "DepthFirstSearch", "SimulatedAnnealing", "AStar",
+		"ParallelDepthFirstSearch", "ParallelBreadthFirstSearch",
+		"BeamSearch", "LimitedDiscrepancySearch", "Grasp",
+		"TabuSearch", "LateAcceptance", "ThresholdAccepting", "GreatDeluge",
+		"Genetic", "LocalBeamSearch", "LargeNeighbourhoodSearch",
+		"VariableNeighbourhoodSearch", "AntColony"
 	};
 	private static final String[] descriptions = {
-		"Breadth-first search", "Depth-first search", "Simulated annealing"
+		"Breadth-first search", "Depth-first search", "Simulated annealing", 
+		"A-star search", "Parallel depth-first search", 
+		"Parallel breadth-first search", "Beam search",
+		"Limited discrepancy search", "GRASP (parallel)",
+		"Tabu search", "Late acceptance hill climbing", "Threshold accepting",
+		"Great deluge", "Genetic algorithm", "Local beam search",
+		"Large neighbourhood search (parallel)", "Variable neighbourhood search",
+		"Ant colony optimization (parallel)"
 	};
 	//No configuration below this line !
 	
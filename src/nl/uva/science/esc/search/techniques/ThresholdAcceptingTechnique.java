@@ -0,0 +1,96 @@
+package nl.uva.science.esc.search.techniques;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.StochasticOptimisationProblem;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Threshold accepting (Dueck and Scheuer). Like simulated annealing, but a
+ * move is accepted if its change in energy is below a threshold, instead of
+ * with a probability depending on a temperature. The threshold falls on the
+ * same schedule as the temperature: after every waittime iterations it is
+ * multiplied by thresholddrop. There is no exp and no random number per
+ * move, and the acceptance is the same in every run.
+ * @author kaper
+ */
+public class ThresholdAcceptingTechnique extends AcceptanceTechnique {
+
+	private double threshold;     //current threshold
+	private double initialthreshold; //starting value for threshold
+	private int waittime;         //number of iterations before threshold change
+	private float thresholddrop;  //new threshold as fraction of previous one
+	private double closetozerothreshold; //threshold where we expect the minimum
+		//energy to be stably reached
+
+	/**
+	 * Constructor
+	 * @param p, problem to solve
+	 * @param initialthreshold
+	 * @param waittime, between threshold drops
+	 * @param thresholddrop, size of a threshold drop as a fraction
+	 * @param closetozerothreshold, threshold at which to stop trying
+	 * @param maxtriesinvain, stop after how many unsuccesful tries
+	 * @throws Exception
+	 */
+	public ThresholdAcceptingTechnique(
+		StochasticOptimisationProblem p, double initialthreshold, int waittime,
+		float thresholddrop, double closetozerothreshold, int maxtriesinvain
+	) throws Exception {
+		super(p, maxtriesinvain);
+		this.initialthreshold = initialthreshold;
+		this.threshold = initialthreshold;
+		this.waittime = waittime;
+		this.thresholddrop = thresholddrop;
+		this.closetozerothreshold = closetozerothreshold;
+	}//end constructor
+
+	/**
+	 * Accept if the energy rises less than the threshold
+	 */
+	protected boolean accept(long energychange) {
+		return energychange < threshold;
+	}//end accept
+
+	protected void lowerControl() {
+		if ((iteration % waittime)==0) {
+			//it is time to change the threshold
+			threshold = threshold * thresholddrop;
+		}//end if
+	}//end lowerControl
+
+	protected boolean isFrozen() {
+		return threshold <= closetozerothreshold;
+	}//end isFrozen
+
+	protected String getControlName() {
+		return "threshold";
+	}//end getControlName
+
+	protected double getControl() {
+		return threshold;
+	}//end getControl
+
+	public double getThreshold() {
+		return threshold;
+	}//end getThreshold
+
+	public double getInitialThreshold() {
+		return initialthreshold;
+	}//end getInitialThreshold
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parametersnames array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("initialthreshold", true, InputType.FLOAT),
+				new Parameter("waittime", true, InputType.POSITIVEINT),
+				new Parameter("thresholddrop", true, InputType.FRACTION),
+				new Parameter("closetozerothreshold", true, InputType.FLOAT),
+				new Parameter("maxtriesinvain", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class
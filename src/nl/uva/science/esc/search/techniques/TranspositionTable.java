@@ -0,0 +1,134 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Arrays;
+
+/**
+ * Transposition table for deterministic tree search: remembers, per state
+ * hash, the lowest cost with which a node of that hash was reached. A node
+ * that is reached again with an equal or higher cost is dominated: its
+ * subtree is the same, so it can not lead to a better solution.
+ *
+ * The table has a fixed size, derived from a memory budget. It is one array
+ * of primitive longs: each entry is a pair (hash, cost and level packed in
+ * one long). Open addressing is limited to a bucket of 4 consecutive
+ * entries (one cache line). When a bucket is full, the entry with the
+ * deepest level is replaced: it guards the smallest subtree, so it is the
+ * cheapest to lose. Entries of shallow nodes, which prune the most, stay.
+ *
+ * Different states with the same 64 bit hash are not told apart. The chance
+ * is small enough to accept.
+ * @author kaper
+ *
+ */
+public class TranspositionTable {
+	private static final int BUCKETSIZE = 4; //entries per bucket
+	private static final long EMPTY = 0;     //hash value that marks a free entry
+	private static final int LEVELBITS = 16; //bits of the value used for the level
+	private static final long LEVELMASK = (1L << LEVELBITS) - 1;
+
+	private long[] table;  //pairs: hash, (cost << LEVELBITS | level)
+	private int bucketmask; //number of buckets - 1, a power of 2 minus 1
+	private long stores;   //number of entries written
+	private long hits;     //number of dominated nodes found
+	private long replacements; //number of entries overwritten by another hash
+
+	/**
+	 * Constructor
+	 * @param memorybudget, bytes the table may use (at least one bucket is made)
+	 */
+	public TranspositionTable(long memorybudget) {
+		long buckets = Math.max(1, memorybudget / (16L * BUCKETSIZE));
+		int n = 1;
+		while (2L * n <= buckets && 2L * n * BUCKETSIZE * 2 <= Integer.MAX_VALUE)
+			n *= 2;
+		table = new long[n * BUCKETSIZE * 2];
+		bucketmask = n - 1;
+		stores = 0;
+		hits = 0;
+		replacements = 0;
+	}//end constructor
+
+	/**
+	 * Check whether a node is dominated by an earlier node with the same hash.
+	 * If not, the node is stored as the cheapest one for its hash.
+	 * @param hash, state hash of the node
+	 * @param cost, cost of the path to the node, not negative
+	 * @param level, level of the node
+	 * @return dominated? (then the node need not be searched)
+	 */
+	public boolean isDominated(long hash, long cost, int level) {
+		if (hash == EMPTY)
+			return false; //can not be stored, so never dominated
+		int start = (int) (mix(hash) & bucketmask) * BUCKETSIZE * 2;
+		int victim = -1;     //entry to overwrite if the hash is not found
+		int victimlevel = -1;
+		for (int i=start; i<start+BUCKETSIZE*2; i+=2) {
+			if (table[i] == hash) {
+				if ((table[i+1] >>> LEVELBITS) <= cost) {
+					hits++;
+					return true;
+				}
+				table[i+1] = pack(cost, level); //we found a cheaper path
+				stores++;
+				return false;
+			}
+			if (table[i] == EMPTY) {
+				if (victimlevel < Integer.MAX_VALUE) {
+					victim = i;
+					victimlevel = Integer.MAX_VALUE; //a free entry is the best victim
+				}
+			}
+			else {
+				int entrylevel = (int) (table[i+1] & LEVELMASK);
+				if (entrylevel > victimlevel) {
+					victim = i;
+					victimlevel = entrylevel;
+				}
+			}//end if
+		}//next i
+		if (table[victim] != EMPTY)
+			replacements++;
+		table[victim] = hash;
+		table[victim+1] = pack(cost, level);
+		stores++;
+		return false;
+	}//end isDominated
+
+	/**
+	 * Pack cost and level into one long
+	 */
+	private static long pack(long cost, int level) {
+		return (cost << LEVELBITS) | (level & LEVELMASK);
+	}//end pack
+
+	/**
+	 * Spread the bits of the hash before taking the bucket number from it
+	 */
+	private static long mix(long h) {
+		h *= 0x9e3779b97f4a7c15L;
+		return h ^ (h >>> 32);
+	}//end mix
+
+	/**
+	 * Forget everything, e.g. before a new search
+	 */
+	public void clear() {
+		Arrays.fill(table, EMPTY);
+		stores = 0;
+		hits = 0;
+		replacements = 0;
+	}//end clear
+
+	public long getStores() {
+		return stores;
+	}//end getStores
+
+	public long getHits() {
+		return hits;
+	}//end getHits
+
+	public long getReplacements() {
+		return replacements;
+	}//end getReplacements
+
+}//end class
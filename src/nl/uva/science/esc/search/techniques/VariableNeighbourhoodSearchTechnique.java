@@ -0,0 +1,438 @@
+package nl.uva.science.esc.search.techniques;
+
+import java.util.Random;
+
+import nl.uva.science.esc.matchmaker.Controller.InputType;
+import nl.uva.science.esc.search.problems.ManyToOneMatchingProblem;
+import nl.uva.science.esc.search.problems.State;
+import nl.uva.science.esc.search.views.Parameter;
+
+/**
+ * Variable neighbourhood search (Mladenovic and Hansen) for the many to one
+ * matching problems. It uses a ladder of four neighbourhoods, from small to
+ * large:
+ * 0. swap: two A's in different B's change places;
+ * 1. relocate: an A moves to an empty place of another B;
+ * 2. 3-cycle: three A's in three different B's move round: the first to
+ *    the B of the second, the second to the B of the third, the third to
+ *    the B of the first;
+ * 3. pair exchange: the A's of a pair of B's are divided over the places
+ *    of these two B's in the best possible way (solved exactly by the
+ *    problem, as in LargeNeighbourhoodSearchTechnique).
+ *
+ * The descent goes up the ladder only when a neighbourhood is exhausted,
+ * and back to the bottom after each improvement (variable neighbourhood
+ * descent). Each neighbourhood is scanned in a new random order, and the
+ * scan stops at the first improving move. A 3-cycle is only tried when
+ * its first A gains by its move, as any improving cycle has such an A.
+ *
+ * Each iteration shakes the best state by a random move from neighbourhood
+ * k, and descends. If that gives a better state, it becomes the best, and k
+ * goes back to 0; otherwise we return to the best state and k goes up, to
+ * 0 again after the last one. For the pair exchange a random move is a
+ * series of random swaps between two random B's.
+ * @author kaper
+ *
+ */
+public class VariableNeighbourhoodSearchTechnique implements Technique {
+
+	private int maxiterations; //number of shake and descent iterations
+	private int maxiterationsinvain; //stop after this many iterations without improvement
+	private int iteration;     //iteration being done
+	private int neighbourhood; //neighbourhood for the next shake
+	private long cost;         //cost of the current state
+	private long bestcost;     //cost of the best state
+	private int bestiteration; //iteration in which it was found
+	private long moves;        //improving moves done by the descents
+	private State beststate;   //the best state
+	private int[] bestplaces;  //and its places, to return to it
+	private int numberOfPlaces;
+	private int numberOfBs;
+	private int[] placeorder;  //random scan order of the places
+	private int[] pairorder;   //random scan order of the pairs of B's, as b1 * numberOfBs + b2
+	private int[] pair;        //the two B's of a pair exchange
+	private Random random;
+	private ManyToOneMatchingProblem p;   //the problem to solve !
+	private volatile boolean running;   //we can stop the process by setting this to no
+	private static final String[] NEIGHBOURHOODS = {"swap", "relocate", "3-cycle", "pair exchange"};
+	private static final int MAXTRIES = 100;  //tries to find a valid random move
+
+	/**
+	 * Constructor, puts the problem in its initial goal state
+	 * @param p, the problem to solve
+	 * @param maxiterations, number of shake and descent iterations
+	 * @param maxiterationsinvain, stop after this many iterations without
+	 *    improvement; a few rounds of the four neighbourhoods at least
+	 * @throws Exception
+	 */
+	public VariableNeighbourhoodSearchTechnique(
+		ManyToOneMatchingProblem p, int maxiterations, int maxiterationsinvain
+	) throws Exception {
+		this.p = p;
+		this.p.initGoalState();
+		this.maxiterations = maxiterations;
+		this.maxiterationsinvain = maxiterationsinvain;
+		this.numberOfPlaces = p.getNumberOfPlaces();
+		this.numberOfBs = p.getNumberOfBs();
+		this.placeorder = new int[numberOfPlaces];
+		for (int i=0; i<numberOfPlaces; i++) {
+			placeorder[i] = i;
+		}//next i
+		this.pairorder = new int[numberOfBs * (numberOfBs - 1) / 2];
+		int k = 0;
+		for (int b1=0; b1<numberOfBs; b1++) {
+			for (int b2=b1+1; b2<numberOfBs; b2++) {
+				pairorder[k++] = b1 * numberOfBs + b2;
+			}//next b2
+		}//next b1
+		this.pair = new int[2];
+		this.bestplaces = new int[numberOfPlaces];
+		this.random = new Random();
+		this.iteration = 0;
+		this.neighbourhood = 0;
+		this.cost = p.getCost();
+		this.bestcost = cost;
+		this.bestiteration = 0;
+		this.moves = 0;
+		this.beststate = null;
+		this.running = false;
+	}//end constructor
+
+	public void run() {
+		running = true;
+		descend();
+		remember();
+		for (iteration=1; iteration<=maxiterations && running
+				&& iteration <= bestiteration + maxiterationsinvain; iteration++) {
+			shake(neighbourhood);
+			descend();
+			if (cost < bestcost) {
+				remember();
+				neighbourhood = 0;
+			}
+			else {
+				p.setPlaces(bestplaces, 0);
+				cost = bestcost;
+				neighbourhood = (neighbourhood + 1) % NEIGHBOURHOODS.length;
+			}//end if
+			//for debugging, comment out in production
+			if (iteration % 100 == 0) {
+				System.out.println("iteration: "+iteration);
+				System.out.println("bestcost: "+bestcost);
+				System.out.println("bestiteration: "+bestiteration);
+				System.out.println("moves: "+moves);
+				System.out.println();
+			}//end if
+		}//next iteration
+		iteration--; //the last one that was done
+		p.setState(beststate.stateClone()); //leave the problem in the best state
+		running = false;
+	}//end run
+
+	/**
+	 * Make the current state the best one
+	 */
+	private void remember() {
+		bestcost = cost;
+		bestiteration = iteration;
+		p.copyPlaces(bestplaces, 0);
+		beststate = p.getState().stateClone();
+	}//end remember
+
+	/**
+	 * Variable neighbourhood descent: make the first improving move found
+	 * in the lowest neighbourhood that has one, until none has
+	 */
+	private void descend() {
+		int k = 0;
+		while (k < NEIGHBOURHOODS.length && running) {
+			boolean improved;
+			switch (k) {
+			case 0: improved = improveBySwap(); break;
+			case 1: improved = improveByRelocate(); break;
+			case 2: improved = improveByCycle(); break;
+			default: improved = improveByPairExchange();
+			}//end switch
+			if (improved) {
+				moves++;
+				k = 0;
+			}
+			else k++;
+		}//end while
+	}//end descend
+
+	/**
+	 * Swap the contents of two places, if that is allowed, and keep the cost
+	 * @return whether it was allowed
+	 */
+	private boolean swap(int place1, int place2) {
+		if (!p.planSwap(place1, place2))
+			return false;
+		cost += p.getDeltaCostRandomMove();
+		p.acceptMove();
+		return true;
+	}//end swap
+
+	/**
+	 * @return an empty place of B b, or -1 if it is full
+	 */
+	private int emptyPlace(int b) {
+		for (int j=p.getFirstPlaceOfB(b+1)-1; j>=p.getFirstPlaceOfB(b); j--) {
+			if (p.getAInPlace(j) == -1)
+				return j;
+		}//next j
+		return -1;
+	}//end emptyPlace
+
+	/**
+	 * First improving swap of two A's, in random order
+	 * @return whether one was found and done
+	 */
+	private boolean improveBySwap() {
+		shuffle(placeorder);
+		for (int x=0; x<numberOfPlaces; x++) {
+			int i = placeorder[x];
+			int ai = p.getAInPlace(i);
+			if (ai == -1)
+				continue;
+			int bi = p.getBOfPlace(i);
+			long now = p.getPreference(ai, bi);
+			for (int y=x+1; y<numberOfPlaces; y++) {
+				int j = placeorder[y];
+				int aj = p.getAInPlace(j);
+				int bj = p.getBOfPlace(j);
+				if (aj == -1 || bj == bi)
+					continue;
+				long delta = p.getPreference(ai, bj) + p.getPreference(aj, bi)
+						- now - p.getPreference(aj, bj);
+				if (delta < 0 && swap(i, j))
+					return true;
+			}//next y
+		}//next x
+		return false;
+	}//end improveBySwap
+
+	/**
+	 * First improving move of an A to an empty place, in random order
+	 * @return whether one was found and done
+	 */
+	private boolean improveByRelocate() {
+		shuffle(placeorder);
+		int start = random.nextInt(numberOfBs);
+		for (int x=0; x<numberOfPlaces; x++) {
+			int i = placeorder[x];
+			int ai = p.getAInPlace(i);
+			if (ai == -1)
+				continue;
+			int bi = p.getBOfPlace(i);
+			long now = p.getPreference(ai, bi);
+			for (int y=0; y<numberOfBs; y++) {
+				int b = (start + y) % numberOfBs;
+				if (b == bi || p.getPreference(ai, b) >= now)
+					continue;
+				int e = emptyPlace(b);
+				if (e != -1 && swap(i, e))
+					return true;
+			}//next y
+		}//next x
+		return false;
+	}//end improveByRelocate
+
+	/**
+	 * First improving 3-cycle of A's, in random order; the first A of the
+	 * cycle must gain by its move
+	 * @return whether one was found and done
+	 */
+	private boolean improveByCycle() {
+		shuffle(placeorder);
+		for (int x=0; x<numberOfPlaces; x++) {
+			int i = placeorder[x];
+			int ai = p.getAInPlace(i);
+			if (ai == -1)
+				continue;
+			int bi = p.getBOfPlace(i);
+			for (int y=0; y<numberOfPlaces; y++) {
+				int j = placeorder[y];
+				int aj = p.getAInPlace(j);
+				int bj = p.getBOfPlace(j);
+				if (aj == -1 || bj == bi)
+					continue;
+				long delta1 = p.getPreference(ai, bj) - p.getPreference(ai, bi);
+				if (delta1 >= 0)
+					continue;
+				for (int z=0; z<numberOfPlaces; z++) {
+					int k = placeorder[z];
+					int ak = p.getAInPlace(k);
+					int bk = p.getBOfPlace(k);
+					if (ak == -1 || bk == bi || bk == bj)
+						continue;
+					long delta = delta1
+							+ p.getPreference(aj, bk) - p.getPreference(aj, bj)
+							+ p.getPreference(ak, bi) - p.getPreference(ak, bk);
+					if (delta < 0) {
+						//ai to place j, aj to place k, ak to place i
+						swap(i, j);
+						swap(i, k);
+						return true;
+					}//end if
+				}//next z
+			}//next y
+		}//next x
+		return false;
+	}//end improveByCycle
+
+	/**
+	 * First pair of B's, in random order, whose A's can be divided better
+	 * over their places
+	 * @return whether one was found and done
+	 */
+	private boolean improveByPairExchange() {
+		shuffle(pairorder);
+		for (int x=0; x<pairorder.length; x++) {
+			pair[0] = pairorder[x] / numberOfBs;
+			pair[1] = pairorder[x] % numberOfBs;
+			long delta = p.reoptimizeBs(pair, 2);
+			if (delta < 0) {
+				cost += delta;
+				return true;
+			}
+		}//next x
+		return false;
+	}//end improveByPairExchange
+
+	/**
+	 * Make a random move from neighbourhood k, if one can be found
+	 */
+	private void shake(int k) {
+		for (int t=0; t<MAXTRIES; t++) {
+			int i = random.nextInt(numberOfPlaces);
+			int j = random.nextInt(numberOfPlaces);
+			int bi = p.getBOfPlace(i);
+			int bj = p.getBOfPlace(j);
+			if (p.getAInPlace(i) == -1 || bi == bj)
+				continue;
+			if (k == 0) {
+				if (p.getAInPlace(j) != -1 && swap(i, j))
+					return;
+			}
+			else if (k == 1) {
+				int e = emptyPlace(bj);
+				if (e != -1 && swap(i, e))
+					return;
+			}
+			else if (k == 2) {
+				int l = random.nextInt(numberOfPlaces);
+				int bl = p.getBOfPlace(l);
+				if (p.getAInPlace(j) != -1 && p.getAInPlace(l) != -1
+						&& bl != bi && bl != bj) {
+					swap(i, j);
+					swap(i, l);
+					return;
+				}
+			}
+			else {
+				//random swaps between the places of the two B's
+				int first1 = p.getFirstPlaceOfB(bi);
+				int size1 = p.getFirstPlaceOfB(bi+1) - first1;
+				int first2 = p.getFirstPlaceOfB(bj);
+				int size2 = p.getFirstPlaceOfB(bj+1) - first2;
+				for (int m=0; m<Math.min(size1, size2); m++) {
+					swap(first1 + random.nextInt(size1), first2 + random.nextInt(size2));
+				}//next m
+				return;
+			}//end if
+		}//next t
+	}//end shake
+
+	/**
+	 * Fisher-Yates shuffle
+	 */
+	private void shuffle(int[] order) {
+		for (int i=order.length-1; i>0; i--) {
+			int j = random.nextInt(i + 1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}//next i
+	}//end shuffle
+
+	//getters and setters for interaction with the UI
+	//take care, no threadsafety!
+
+	public int getIteration() {
+		return iteration;
+	}//end getIteration
+
+	public long getBestCost() {
+		return bestcost;
+	}//end getBestCost
+
+	public int getBestIteration() {
+		return bestiteration;
+	}//end getBestIteration
+
+	public long getMoves() {
+		return moves;
+	}//end getMoves
+
+	public State getCurrentState() {
+		return p.getState(); //take care to only read it
+	}//end getCurrentState
+
+	public State getBestState() {
+		return beststate;    //it's a clone and has only one goal: being read
+	}//end getBestState
+
+	/**
+	 * Send the run method a stop signal
+	 */
+	public void stopRunning() {
+		running = false;
+	}//end stopRunning
+
+	/**
+	 * Is it running?
+	 */
+	public boolean isRunning() {
+		return running;
+	}//end isRunning
+
+	/**
+	 * Advertise simple properties meant for display in the UI
+	 * @return array of names of properties
+	 */
+	public String[] advertiseSimpleProperties() {
+		return new String[] {
+			"iteration", "neighbourhood", "cost", "moves", "bestcost", "bestiteration"
+		};
+	}//end advertiseSimpleProperties
+
+	/**
+	 * Values corresponding to the advertised simple properties
+	 * converted to Strings for easy display
+	 * @return values array
+	 */
+	public String[] simplePropertyValues() {
+		return new String[] {
+			String.valueOf(iteration),
+			NEIGHBOURHOODS[neighbourhood],
+			String.valueOf(cost),
+			String.valueOf(moves),
+			String.valueOf(bestcost),
+			String.valueOf(bestiteration)
+		};
+	}//end simplePropertyValues
+
+	/**
+	 * Advertise parameters that the GUI must get from the user before calling
+	 * the constructor
+	 * @return parameters array
+	 */
+	public static Parameter[] advertiseParameters() {
+		return new Parameter[] {
+				new Parameter("maxiterations", true, InputType.POSITIVEINT),
+				new Parameter("maxiterationsinvain", true, InputType.POSITIVEINT)
+				};
+	}//end advertiseParameters
+
+}//end class